@@ -0,0 +1,178 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.staticUIExtensions.Configuration;
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rule sets, configuration files and server objects shared by benchmarks.
+ * Server interfaces are replaced with no-op proxies, so that only plugin code is measured.
+ */
+public class BenchmarkFixtures {
+  /**
+   * Typical TeamCity page urls, both matched and not matched by generated rules
+   */
+  public static final String[] URLS = {
+          "/overview.html",
+          "/viewType.html?buildTypeId=bt1",
+          "/viewLog.html?buildId=100&tab=buildResultsDiv",
+          "/project.html?projectId=project17",
+          "/admin/admin.html?item=projects",
+          "/changes.html",
+          "/agents.html?tab=agentsList",
+          "/queue.html",
+  };
+
+  private static final String[] PAGES = {
+          "overview.html", "viewType.html", "viewLog.html", "project.html",
+          "admin/admin.html", "changes.html", "agents.html", "queue.html"
+  };
+
+  private static final PlaceId[] PLACES = {
+          PlaceId.ALL_PAGES_HEADER, PlaceId.ALL_PAGES_FOOTER, PlaceId.BEFORE_CONTENT
+  };
+  private static final String[] PLACE_NAMES = {
+          "ALL_PAGES_HEADER", "ALL_PAGES_FOOTER", "BEFORE_CONTENT"
+  };
+
+  /**
+   * @return rules as they are produced by configuration readers: OR of url elements,
+   *         each url element being AND of its conditions
+   */
+  @NotNull
+  public static List<Rule> createRules(final int count) {
+    final List<Rule> rules = new ArrayList<Rule>(count);
+    for (int i = 0; i < count; i++) {
+      final String page = PAGES[i % PAGES.length];
+      final List<UrlMatcher> urls = new ArrayList<UrlMatcher>();
+      switch (i % 4) {
+        case 0:
+          urls.add(new AndMatcher(Arrays.<UrlMatcher>asList(new StartsWithMatcher(page))));
+          break;
+        case 1:
+          urls.add(new AndMatcher(Arrays.<UrlMatcher>asList(new EqualsMatcher(page))));
+          urls.add(new AndMatcher(Arrays.<UrlMatcher>asList(new EqualsMatcher(""))));
+          break;
+        case 2:
+          urls.add(new AndMatcher(Arrays.<UrlMatcher>asList(new ContainsMatcher("Id=project" + i))));
+          break;
+        default:
+          urls.add(new AndMatcher(Arrays.<UrlMatcher>asList(new StartsWithMatcher(page), new ContainsMatcher("tab=" + i))));
+          break;
+      }
+      rules.add(new Rule("_" + i, new OrMatcher(urls), PLACES[i % PLACES.length], new StaticContent("rule" + i + ".html", null, null)));
+    }
+    return rules;
+  }
+
+  /**
+   * @return text of a configuration file with the given number of rules
+   */
+  @NotNull
+  public static String createConfigurationXml(final int count) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" ?>\n<teamcity-static-ui-extensions>\n");
+    for (int i = 0; i < count; i++) {
+      final String page = PAGES[i % PAGES.length];
+      sb.append("  <rule place-id=\"").append(PLACE_NAMES[i % PLACE_NAMES.length]).append("\" html-file=\"rule").append(i).append(".html\">\n");
+      switch (i % 4) {
+        case 0:
+          sb.append("    <url starts=\"").append(page).append("\"/>\n");
+          break;
+        case 1:
+          sb.append("    <url equals=\"").append(page).append("\"/>\n");
+          sb.append("    <url equals=\"\"/>\n");
+          break;
+        case 2:
+          sb.append("    <url contains=\"Id=project").append(i).append("\"/>\n");
+          break;
+        default:
+          sb.append("    <url starts=\"").append(page).append("\" contains=\"tab=").append(i).append("\"/>\n");
+          break;
+      }
+      sb.append("  </rule>\n");
+    }
+    sb.append("</teamcity-static-ui-extensions>\n");
+    return sb.toString();
+  }
+
+  @NotNull
+  public static File createTempDir() throws IOException {
+    final File dir = File.createTempFile("static-ui-benchmark", "");
+    if (!dir.delete() || !dir.mkdirs()) {
+      throw new IOException("Failed to create temp directory " + dir);
+    }
+    return dir;
+  }
+
+  @NotNull
+  public static Configuration createConfiguration(@NotNull final File base) {
+    return new Configuration() {
+      @NotNull
+      public File getConfigurationXml() {
+        return new File(base, "static-ui-extensions.xml");
+      }
+
+      @Nullable
+      public File mapIncludeFilePath(@NotNull final String path) {
+        return new File(base, path);
+      }
+
+      @NotNull
+      public String getAccessToken() {
+        return "token";
+      }
+
+      @NotNull
+      public File getIncludeFilesBase() {
+        return base;
+      }
+    };
+  }
+
+  /**
+   * @return implementation of the interface that does nothing and returns default values
+   */
+  @NotNull
+  public static <T> T noop(@NotNull final Class<T> clazz) {
+    return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("toString".equals(method.getName())) return clazz.getSimpleName();
+        if ("hashCode".equals(method.getName())) return System.identityHashCode(proxy);
+        if ("equals".equals(method.getName())) return proxy == args[0];
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+      }
+    }));
+  }
+}
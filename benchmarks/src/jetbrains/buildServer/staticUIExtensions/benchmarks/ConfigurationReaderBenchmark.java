@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.staticUIExtensions.ConfigurationException;
+import jetbrains.buildServer.staticUIExtensions.PagePlacesCollector;
+import jetbrains.buildServer.staticUIExtensions.config.CachingConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationFingerprint;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReaderImpl;
+import jetbrains.buildServer.staticUIExtensions.config.StaxConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.util.FileUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of configuration files of different size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationReaderBenchmark {
+  @Param({"10", "1000", "10000"})
+  public int rulesCount;
+
+  private File myBase;
+  private File myConfig;
+  private ConfigurationReaderImpl myJdomReader;
+  private StaxConfigurationReader myStaxReader;
+  private PagePlacesCollector myCollector;
+  private ServerPaths myPaths;
+
+  @Setup
+  public void setUp() throws IOException, ConfigurationException {
+    myBase = BenchmarkFixtures.createTempDir();
+    myConfig = new File(myBase, "static-ui-extensions.xml");
+    FileUtil.writeFile(myConfig, BenchmarkFixtures.createConfigurationXml(rulesCount));
+
+    myCollector = new PagePlacesCollector();
+    myJdomReader = new ConfigurationReaderImpl(myCollector);
+    myStaxReader = new StaxConfigurationReader(myCollector);
+    myPaths = new ServerPaths(myBase.getAbsolutePath());
+
+    // writes binary cache into the caches directory
+    createCachingReader().parseConfiguration(myConfig);
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtil.delete(myBase);
+  }
+
+  @Benchmark
+  public Collection<Rule> jdom() throws ConfigurationException {
+    return myJdomReader.parseConfiguration(myConfig);
+  }
+
+  @Benchmark
+  public Collection<Rule> stax() throws ConfigurationException {
+    return myStaxReader.parseConfiguration(myConfig);
+  }
+
+  @Benchmark
+  public Collection<Rule> cached() throws ConfigurationException {
+    // a new reader does not have the configuration in memory, it hashes the file and loads the binary cache
+    return createCachingReader().parseConfiguration(myConfig);
+  }
+
+  private CachingConfigurationReader createCachingReader() {
+    return new CachingConfigurationReader(myJdomReader, myCollector, new ConfigurationFingerprint(), myPaths);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.controllers.MockRequest;
+import jetbrains.buildServer.serverSide.MockServerPluginDescriptior;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.PlaceRulesExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RulePageExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RulePageExtensionsFactory;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
+import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deciding which page extensions are shown on a page.
+ * Every invocation renders all typical urls with a fresh request,
+ * so that nothing is reused from request attributes of a previous page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulePageExtensionBenchmark {
+  @Param({"10", "100", "1000"})
+  public int rulesCount;
+
+  private List<RulePageExtension> myRuleExtensions;
+  private List<RulePageExtension> mySharedMatcherExtensions;
+  private List<PlaceRulesExtension> myPlaceExtensions;
+
+  @Setup
+  public void setUp() throws IOException {
+    final PluginDescriptor descriptor = new MockServerPluginDescriptior();
+    final PagePlaces places = BenchmarkFixtures.noop(PagePlaces.class);
+    final ControllerPaths paths = new ControllerPaths(descriptor, BenchmarkFixtures.createConfiguration(BenchmarkFixtures.createTempDir()));
+    final RulePageExtensionsFactory factory = new RulePageExtensionsFactory(places, descriptor, paths);
+
+    final List<Rule> rules = BenchmarkFixtures.createRules(rulesCount);
+    final RulesMatcher matcher = new RulesMatcher(rules);
+
+    myRuleExtensions = new ArrayList<RulePageExtension>();
+    mySharedMatcherExtensions = new ArrayList<RulePageExtension>();
+    for (Rule rule : rules) {
+      myRuleExtensions.add(factory.createExtension(rule));
+      mySharedMatcherExtensions.add(factory.createExtension(rule));
+    }
+    // extensions published with the matcher take it from the snapshot, as on the server
+    new StaticContentManager().updateExtensions(mySharedMatcherExtensions, matcher, null);
+    myPlaceExtensions = factory.createPlaceExtensions(rules, matcher);
+  }
+
+  @Benchmark
+  public void ruleMatchers(final Blackhole bh) {
+    render(myRuleExtensions, bh);
+  }
+
+  @Benchmark
+  public void sharedMatcher(final Blackhole bh) {
+    render(mySharedMatcherExtensions, bh);
+  }
+
+  @Benchmark
+  public void placeDispatch(final Blackhole bh) {
+    render(myPlaceExtensions, bh);
+  }
+
+  private static void render(final List<? extends SimplePageExtension> extensions, final Blackhole bh) {
+    for (String url : BenchmarkFixtures.URLS) {
+      final MockRequest request = new MockRequest();
+      request.setRequestURI("bs", url);
+      for (SimplePageExtension extension : extensions) {
+        bh.consume(extension.isAvailable(request));
+      }
+    }
+  }
+}
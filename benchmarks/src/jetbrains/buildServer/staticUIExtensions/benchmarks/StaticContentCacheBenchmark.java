@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.web.ContentWrapper;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.util.FileUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Included file lookup when the file is cached and when every call has to read it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticContentCacheBenchmark {
+  @Param({"1024", "65536"})
+  public int fileSize;
+
+  private File myBase;
+  private File myFile;
+  private StaticContentCache myCache;
+  private StaticContentCache myNoCache;
+
+  @Setup
+  public void setUp() throws IOException {
+    myBase = BenchmarkFixtures.createTempDir();
+    myFile = new File(myBase, "header.css");
+    final StringBuilder sb = new StringBuilder(fileSize);
+    while (sb.length() < fileSize) {
+      sb.append(".header { background-color: red; }\n");
+    }
+    FileUtil.writeFile(myFile, sb.substring(0, fileSize));
+
+    myCache = new StaticContentCache();
+    myCache.getContent(myFile, ContentWrapper.CSS);
+
+    myNoCache = new StaticContentCache();
+    myNoCache.settingsChanged(new Settings(Collections.singletonMap(StaticContentCache.MAX_SIZE_PARAM, "0")));
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtil.delete(myBase);
+  }
+
+  @Benchmark
+  public byte[] hit() throws IOException {
+    return myCache.getContent(myFile, ContentWrapper.CSS);
+  }
+
+  @Benchmark
+  public byte[] miss() throws IOException {
+    return myNoCache.getContent(myFile, ContentWrapper.CSS);
+  }
+}
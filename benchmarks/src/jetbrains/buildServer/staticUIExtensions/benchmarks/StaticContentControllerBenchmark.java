@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.controllers.AuthorizationInterceptor;
+import jetbrains.buildServer.controllers.MockRequest;
+import jetbrains.buildServer.controllers.MockResponse;
+import jetbrains.buildServer.serverSide.MockServerPluginDescriptior;
+import jetbrains.buildServer.staticUIExtensions.Configuration;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
+import jetbrains.buildServer.staticUIExtensions.model.TrueMatcher;
+import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragmentsCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticAssets;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentController;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request to the include controller with mocked servlet objects
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticContentControllerBenchmark {
+  @Param({"inline", "link"})
+  public String assets;
+
+  private File myBase;
+  private StaticContentController myController;
+
+  @Setup
+  public void setUp() throws IOException {
+    myBase = BenchmarkFixtures.createTempDir();
+    FileUtil.writeFile(new File(myBase, "header.css"), ".header { background-color: red; }");
+    FileUtil.writeFile(new File(myBase, "main.js"), "alert('hi from main.js');");
+    FileUtil.writeFile(new File(myBase, "part.html"), "<div>content included by static ui plugin</div>");
+
+    final Configuration config = BenchmarkFixtures.createConfiguration(myBase);
+    final ControllerPaths paths = new ControllerPaths(new MockServerPluginDescriptior(), config);
+    final StaticContentCache cache = new StaticContentCache();
+    final StaticAssets staticAssets = new StaticAssets(paths, cache);
+    staticAssets.settingsChanged(new Settings(Collections.singletonMap(StaticAssets.ASSETS_PARAM, assets)));
+    final RuleFragmentsCache fragments = new RuleFragmentsCache(config, cache, staticAssets);
+    final StaticContentManager manager = new StaticContentManager();
+    manager.updateExtensions(Collections.<SimplePageExtension>emptyList(), null,
+            fragments.createFragments(Arrays.asList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("part.html", "main.js", "header.css")))));
+
+    myController = new StaticContentController(
+            BenchmarkFixtures.noop(AuthorizationInterceptor.class),
+            BenchmarkFixtures.noop(WebControllerManager.class),
+            paths, config, cache, manager, staticAssets);
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtil.delete(myBase);
+  }
+
+  @Benchmark
+  public MockResponse includeFiles() throws Exception {
+    return get("token", "token", "includeFile", "part.html", "includeCssFile", "header.css", "includeJsFile", "main.js");
+  }
+
+  @Benchmark
+  public MockResponse includeRule() throws Exception {
+    return get("token", "token", "rule", "_0");
+  }
+
+  private MockResponse get(final String... params) throws Exception {
+    final MockRequest request = new MockRequest();
+    request.setRequestURI("bs", "/overview.html");
+    for (int i = 0; i + 1 < params.length; i += 2) {
+      request.addParameter(params[i], params[i + 1]);
+    }
+    final MockResponse response = new MockResponse();
+    myController.handleRequest(request, response);
+    return response;
+  }
+}
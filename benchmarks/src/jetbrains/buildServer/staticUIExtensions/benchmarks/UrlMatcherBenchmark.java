@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.benchmarks;
+
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single url matchers against the set of typical page urls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlMatcherBenchmark {
+  private final String[] myUrls = new String[BenchmarkFixtures.URLS.length];
+
+  private final UrlMatcher myStartsWith = new StartsWithMatcher("viewLog.html");
+  private final UrlMatcher myEquals = new EqualsMatcher("overview.html");
+  private final UrlMatcher myContains = new ContainsMatcher("tab=buildResultsDiv");
+  private final UrlMatcher myCombined = new OrMatcher(Arrays.<UrlMatcher>asList(
+          new AndMatcher(Arrays.<UrlMatcher>asList(new StartsWithMatcher("viewLog.html"), new ContainsMatcher("tab=buildResultsDiv"))),
+          new AndMatcher(Arrays.<UrlMatcher>asList(new EqualsMatcher("overview.html")))));
+  private final UrlMatcher myTrue = new TrueMatcher();
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < myUrls.length; i++) {
+      // rules are matched against the path without leading slash
+      myUrls[i] = BenchmarkFixtures.URLS[i].substring(1);
+    }
+  }
+
+  @Benchmark
+  public void startsWith(final Blackhole bh) {
+    match(myStartsWith, bh);
+  }
+
+  @Benchmark
+  public void equalsUrl(final Blackhole bh) {
+    match(myEquals, bh);
+  }
+
+  @Benchmark
+  public void contains(final Blackhole bh) {
+    match(myContains, bh);
+  }
+
+  @Benchmark
+  public void combined(final Blackhole bh) {
+    match(myCombined, bh);
+  }
+
+  @Benchmark
+  public void always(final Blackhole bh) {
+    match(myTrue, bh);
+  }
+
+  private void match(final UrlMatcher matcher, final Blackhole bh) {
+    for (String url : myUrls) {
+      bh.consume(matcher.matches(url));
+    }
+  }
+}
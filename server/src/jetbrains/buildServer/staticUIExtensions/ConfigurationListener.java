@@ -19,6 +19,7 @@ package jetbrains.buildServer.staticUIExtensions;
 import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReader;
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -35,16 +36,26 @@ public class ConfigurationListener implements ConfigurationChangeListener {
   private final ConfigurationReader myReader;
   private final PagePlacesInitializer myInitializer;
   private final Configuration myConfiguration;
+  private final Collection<SettingsChangeListener> mySettingsListeners;
 
   public ConfigurationListener(@NotNull final ConfigurationReader reader,
                                @NotNull final PagePlacesInitializer initializer,
-                               @NotNull final Configuration configuration) {
+                               @NotNull final Configuration configuration,
+                               @NotNull final Collection<SettingsChangeListener> settingsListeners) {
     myReader = reader;
     myInitializer = initializer;
     myConfiguration = configuration;
+    mySettingsListeners = settingsListeners;
   }
 
   public void configurationChanged() {
+    if (!mySettingsListeners.isEmpty()) {
+      final Settings settings = parseSettings();
+      for (SettingsChangeListener listener : mySettingsListeners) {
+        listener.settingsChanged(settings);
+      }
+    }
+
     final Collection<Rule> rules = parseConfigs();
 
     myInitializer.registerPagePlaces(rules);
@@ -62,4 +73,17 @@ public class ConfigurationListener implements ConfigurationChangeListener {
     }
     return Collections.emptyList();
   }
+
+  @NotNull
+  private Settings parseSettings() {
+    final File xml = myConfiguration.getConfigurationXml();
+    if (xml.isFile()) {
+      try {
+        return myReader.parseSettings(xml);
+      } catch (ConfigurationException e) {
+        LOG.warn("Failed to parse settings from configuration file: " + e.getMessage(), e);
+      }
+    }
+    return Settings.EMPTY;
+  }
 }
@@ -26,13 +26,30 @@ import java.lang.reflect.Modifier;
 import java.util.*;
 
 /**
+ * Lists page places declared in {@link PlaceId}. Places are collected once
+ * on creation and looked up by name ignoring case.
+ *
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 18:14
  */
 public class PagePlacesCollector {
   private static final Logger LOG = Logger.getInstance(PagePlacesCollector.class.getName());
 
-  private Map<String, PlaceId> myPlaces;
+  private final Map<String, PlaceId> myPlaces;
+  private final Map<String, PlaceId> myPlacesByName;
+
+  public PagePlacesCollector() {
+    myPlaces = listAllPagePlaces();
+
+    final Map<String, PlaceId> byName = new HashMap<String, PlaceId>();
+    for (Map.Entry<String, PlaceId> e : myPlaces.entrySet()) {
+      final String key = normalize(e.getKey());
+      if (!byName.containsKey(key)) {
+        byName.put(key, e.getValue());
+      }
+    }
+    myPlacesByName = byName;
+  }
 
   @NotNull
   private Map<String, PlaceId> listAllPagePlaces() {
@@ -58,23 +75,17 @@ public class PagePlacesCollector {
 
   @NotNull
   public Map<String, PlaceId> getPlaceIds() {
-    if (myPlaces == null) {
-      myPlaces = listAllPagePlaces();
-    }
     return myPlaces;
   }
 
   @Nullable
   public PlaceId findByName(@Nullable String placeId) {
     if (placeId == null) return null;
-    placeId = placeId.trim();
-
-    for (Map.Entry<String, PlaceId> e : getPlaceIds().entrySet()) {
-      if (e.getKey().equalsIgnoreCase(placeId)) {
-        return e.getValue();
-      }
-    }
+    return myPlacesByName.get(normalize(placeId.trim()));
+  }
 
-    return null;
+  @NotNull
+  private static String normalize(@NotNull final String name) {
+    return name.toUpperCase(Locale.ENGLISH);
   }
 }
@@ -17,6 +17,9 @@
 package jetbrains.buildServer.staticUIExtensions;
 
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragments;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragmentsCache;
 import jetbrains.buildServer.staticUIExtensions.web.RulePageExtension;
 import jetbrains.buildServer.staticUIExtensions.web.RulePageExtensionsFactory;
 import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
@@ -33,18 +36,34 @@ import java.util.List;
 public class PagePlacesInitializerImpl implements PagePlacesInitializer {
   private final RulePageExtensionsFactory myExtensionsFactory;
   private final StaticContentManager myRegistry;
+  private final RuleFragmentsCache myFragments;
 
   public PagePlacesInitializerImpl(@NotNull final RulePageExtensionsFactory extensionsFactory,
-                                   @NotNull final StaticContentManager registry) {
+                                   @NotNull final StaticContentManager registry,
+                                   @NotNull final RuleFragmentsCache fragments) {
     myExtensionsFactory = extensionsFactory;
     myRegistry = registry;
+    myFragments = fragments;
   }
 
-  public void registerPagePlaces(@NotNull final Collection<Rule> rules) {
-    List<RulePageExtension> exts = new ArrayList<RulePageExtension>();
-    for (Rule rule : rules) {
-      exts.add(myExtensionsFactory.createExtension(rule));
+  public synchronized void registerPagePlaces(@NotNull final Collection<Rule> rules) {
+    final RulesMatcher matcher = new RulesMatcher(rules);
+    final RuleFragments fragments = myFragments.createFragments(rules);
+    final RuleFragments oldFragments = myRegistry.getSnapshot().getFragments();
+
+    if (myExtensionsFactory.isPlaceDispatch()) {
+      myRegistry.updateExtensions(myExtensionsFactory.createPlaceExtensions(rules, matcher), matcher, fragments);
+    } else {
+      List<RulePageExtension> exts = new ArrayList<RulePageExtension>();
+      for (Rule rule : rules) {
+        exts.add(myExtensionsFactory.createExtension(rule));
+      }
+      myRegistry.updateExtensions(exts, matcher, fragments);
+    }
+
+    // fragments are swapped together with extensions, the old ones are no longer published
+    if (oldFragments != null) {
+      myFragments.release(oldFragments);
     }
-    myRegistry.updateExtensions(exts);
   }
 }
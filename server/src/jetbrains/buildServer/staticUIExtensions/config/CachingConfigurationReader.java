@@ -0,0 +1,304 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.config;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.staticUIExtensions.ConfigurationException;
+import jetbrains.buildServer.staticUIExtensions.PagePlacesCollector;
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Keeps parsed configuration in a binary file in the TeamCity caches directory.
+ * The cache is used while the hash of the xml is the same, otherwise
+ * the xml is parsed with the delegate reader and the cache is rewritten.
+ * The hash computed by {@link ConfigurationWatcher} is reused, so an unchanged xml is not read.
+ * <p/>
+ * The last parsed configuration is also kept in memory, so settings and rules
+ * of the same file are parsed once.
+ */
+public class CachingConfigurationReader implements ConfigurationReader {
+  private static final Logger LOG = Logger.getInstance(CachingConfigurationReader.class.getName());
+
+  private static final int MAGIC = 0x53554945;
+  private static final int FORMAT_VERSION = 2;
+  private static final String CACHE_DIR = "staticUIExtensions";
+  private static final String CACHE_SUFFIX = ".cache";
+
+  private final ConfigurationReader myDelegate;
+  private final PagePlacesCollector myCollector;
+  private final ConfigurationFingerprint myFingerprint;
+  private final File myCacheDir;
+  private Parsed myLast;
+
+  public CachingConfigurationReader(@NotNull final ConfigurationReader delegate,
+                                    @NotNull final PagePlacesCollector collector,
+                                    @NotNull final ConfigurationFingerprint fingerprint,
+                                    @NotNull final ServerPaths paths) {
+    myDelegate = delegate;
+    myCollector = collector;
+    myFingerprint = fingerprint;
+    myCacheDir = new File(paths.getCachesDir(), CACHE_DIR);
+  }
+
+  @NotNull
+  public Collection<Rule> parseConfiguration(@NotNull final File config) throws ConfigurationException {
+    return load(config).getRules();
+  }
+
+  @NotNull
+  public Settings parseSettings(@NotNull final File config) throws ConfigurationException {
+    return load(config).getSettings();
+  }
+
+  @NotNull
+  public File getCacheFile(@NotNull final File config) {
+    return new File(myCacheDir, config.getName() + CACHE_SUFFIX);
+  }
+
+  @NotNull
+  private synchronized Parsed load(@NotNull final File config) throws ConfigurationException {
+    final byte[] hash = myFingerprint.get(config);
+    if (hash == null) {
+      throw new ConfigurationException("Failed to read configuration file: " + config);
+    }
+
+    final Parsed last = myLast;
+    if (last != null && last.myFile.equals(config) && Arrays.equals(last.myHash, hash)) {
+      return last;
+    }
+
+    final File cacheFile = getCacheFile(config);
+    Parsed parsed = readCache(config, cacheFile, hash);
+    if (parsed == null) {
+      parsed = parse(config, hash);
+      if (parsed.isValid()) {
+        writeCache(cacheFile, parsed);
+      }
+    }
+    myLast = parsed;
+    return parsed;
+  }
+
+  @NotNull
+  private Parsed parse(@NotNull final File config, @NotNull final byte[] hash) {
+    final Parsed parsed = new Parsed(config, hash);
+    try {
+      parsed.mySettings = myDelegate.parseSettings(config);
+    } catch (ConfigurationException e) {
+      parsed.mySettingsError = e;
+    }
+    try {
+      parsed.myRules = myDelegate.parseConfiguration(config);
+    } catch (ConfigurationException e) {
+      parsed.myRulesError = e;
+    }
+    return parsed;
+  }
+
+  @Nullable
+  private Parsed readCache(@NotNull final File config, @NotNull final File cacheFile, @NotNull final byte[] hash) {
+    if (!cacheFile.isFile()) return null;
+
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      if (is.readInt() != MAGIC || is.readInt() != FORMAT_VERSION) return null;
+
+      final byte[] cachedHash = new byte[is.readUnsignedByte()];
+      is.readFully(cachedHash);
+      if (!Arrays.equals(cachedHash, hash)) return null;
+
+      final Parsed parsed = new Parsed(config, hash);
+
+      final Map<String, String> params = new HashMap<String, String>();
+      for (int i = is.readInt(); i > 0; i--) {
+        params.put(is.readUTF(), is.readUTF());
+      }
+      parsed.mySettings = params.isEmpty() ? Settings.EMPTY : new Settings(params);
+
+      final List<Rule> rules = new ArrayList<Rule>();
+      for (int i = is.readInt(); i > 0; i--) {
+        final String id = is.readUTF();
+        final PlaceId place = readPlace(is);
+        final StaticContent content = new StaticContent(readString(is), readString(is), readString(is));
+        rules.add(new Rule(id, readMatcher(is), place, content));
+      }
+      parsed.myRules = rules;
+      return parsed;
+    } catch (IOException e) {
+      LOG.debug("Failed to read cached configuration from " + cacheFile + ": " + e.getMessage());
+      return null;
+    } finally {
+      FileUtil.close(is);
+    }
+  }
+
+  private void writeCache(@NotNull final File cacheFile, @NotNull final Parsed parsed) {
+    final File tmp = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+    DataOutputStream os = null;
+    try {
+      cacheFile.getParentFile().mkdirs();
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      os.writeInt(MAGIC);
+      os.writeInt(FORMAT_VERSION);
+      os.writeByte(parsed.myHash.length);
+      os.write(parsed.myHash);
+
+      final Map<String, String> params = parsed.mySettings.getParams();
+      os.writeInt(params.size());
+      for (Map.Entry<String, String> e : params.entrySet()) {
+        os.writeUTF(e.getKey());
+        os.writeUTF(e.getValue());
+      }
+
+      final Map<PlaceId, String> placeNames = new IdentityHashMap<PlaceId, String>();
+      for (Map.Entry<String, PlaceId> e : myCollector.getPlaceIds().entrySet()) {
+        placeNames.put(e.getValue(), e.getKey());
+      }
+
+      os.writeInt(parsed.myRules.size());
+      for (Rule rule : parsed.myRules) {
+        os.writeUTF(rule.getRuleId());
+        writeString(os, rule.getPlace() == null ? null : placeNames.get(rule.getPlace()));
+        writeString(os, rule.getContent().getHTML());
+        writeString(os, rule.getContent().getJS());
+        writeString(os, rule.getContent().getCSS());
+        writeMatcher(os, rule.getUrlMatcher());
+      }
+      os.close();
+      os = null;
+
+      FileUtil.delete(cacheFile);
+      if (!tmp.renameTo(cacheFile)) {
+        throw new IOException("Failed to rename " + tmp + " to " + cacheFile);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to save configuration cache to " + cacheFile + ": " + e.getMessage());
+      FileUtil.close(os);
+      FileUtil.delete(tmp);
+    }
+  }
+
+  @Nullable
+  private PlaceId readPlace(@NotNull final DataInputStream is) throws IOException {
+    final String name = readString(is);
+    if (name == null) return null;
+
+    final PlaceId place = myCollector.findByName(name);
+    if (place == null) throw new IOException("Unknown place: " + name);
+    return place;
+  }
+
+  private static void writeMatcher(@NotNull final DataOutputStream os, @NotNull final UrlMatcher matcher) throws IOException {
+    if (matcher instanceof TrueMatcher) {
+      os.writeByte('T');
+    } else if (matcher instanceof StartsWithMatcher) {
+      os.writeByte('S');
+      os.writeUTF(((StartsWithMatcher) matcher).getPrefix());
+    } else if (matcher instanceof EqualsMatcher) {
+      os.writeByte('E');
+      os.writeUTF(((EqualsMatcher) matcher).getValue());
+    } else if (matcher instanceof ContainsMatcher) {
+      os.writeByte('C');
+      os.writeUTF(((ContainsMatcher) matcher).getSubstring());
+    } else if (matcher instanceof AndMatcher || matcher instanceof OrMatcher) {
+      final boolean and = matcher instanceof AndMatcher;
+      final Collection<UrlMatcher> children = and ? ((AndMatcher) matcher).getMatchers() : ((OrMatcher) matcher).getMatchers();
+      os.writeByte(and ? 'A' : 'O');
+      os.writeInt(children.size());
+      for (UrlMatcher child : children) {
+        writeMatcher(os, child);
+      }
+    } else {
+      throw new IOException("Unsupported url matcher: " + matcher);
+    }
+  }
+
+  @NotNull
+  private static UrlMatcher readMatcher(@NotNull final DataInputStream is) throws IOException {
+    final int type = is.readUnsignedByte();
+    switch (type) {
+      case 'T':
+        return new TrueMatcher();
+      case 'S':
+        return new StartsWithMatcher(is.readUTF());
+      case 'E':
+        return new EqualsMatcher(is.readUTF());
+      case 'C':
+        return new ContainsMatcher(is.readUTF());
+      case 'A':
+      case 'O':
+        final List<UrlMatcher> children = new ArrayList<UrlMatcher>();
+        for (int i = is.readInt(); i > 0; i--) {
+          children.add(readMatcher(is));
+        }
+        return type == 'A' ? new AndMatcher(children) : new OrMatcher(children);
+      default:
+        throw new IOException("Unknown url matcher type: " + type);
+    }
+  }
+
+  private static void writeString(@NotNull final DataOutputStream os, @Nullable final String value) throws IOException {
+    os.writeBoolean(value != null);
+    if (value != null) {
+      os.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readString(@NotNull final DataInputStream is) throws IOException {
+    return is.readBoolean() ? is.readUTF() : null;
+  }
+
+  private static class Parsed {
+    private final File myFile;
+    private final byte[] myHash;
+    private Settings mySettings;
+    private ConfigurationException mySettingsError;
+    private Collection<Rule> myRules;
+    private ConfigurationException myRulesError;
+
+    private Parsed(@NotNull final File file, @NotNull final byte[] hash) {
+      myFile = file;
+      myHash = hash;
+    }
+
+    public boolean isValid() {
+      return mySettingsError == null && myRulesError == null;
+    }
+
+    @NotNull
+    public Settings getSettings() throws ConfigurationException {
+      if (mySettingsError != null) throw mySettingsError;
+      return mySettings;
+    }
+
+    @NotNull
+    public Collection<Rule> getRules() throws ConfigurationException {
+      if (myRulesError != null) throw myRulesError;
+      return myRules;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.config;
+
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash of the configuration file content shared by {@link ConfigurationWatcher},
+ * which computes it on every detected change, and {@link CachingConfigurationReader},
+ * which reuses it while the file size and modification time are the same.
+ */
+public class ConfigurationFingerprint {
+  private File myFile;
+  private long myLength;
+  private long myLastModified;
+  private byte[] myHash;
+
+  /**
+   * Reads the file and remembers its hash
+   *
+   * @return hash of the file content, empty array for a missing file
+   *         or null if the file cannot be read
+   */
+  @Nullable
+  public byte[] update(@NotNull final File file) {
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    final byte[] hash = hash(file);
+    synchronized (this) {
+      myFile = file;
+      myLength = length;
+      myLastModified = lastModified;
+      myHash = hash;
+    }
+    return hash;
+  }
+
+  /**
+   * @return remembered hash if the file was not modified since it was computed,
+   *         otherwise the file is read again, see {@link #update(File)}
+   */
+  @Nullable
+  public byte[] get(@NotNull final File file) {
+    synchronized (this) {
+      if (myHash != null && file.equals(myFile) && file.length() == myLength && file.lastModified() == myLastModified) {
+        return myHash;
+      }
+    }
+    return update(file);
+  }
+
+  @Nullable
+  private static byte[] hash(@NotNull final File file) {
+    if (!file.isFile()) return new byte[0];
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(FileUtil.loadFileBytes(file));
+    } catch (IOException e) {
+      return null;
+    } catch (NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+}
@@ -22,18 +22,23 @@ import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 20:04
  */
 public class ConfigurationImpl implements Configuration {
+  private static final int MAX_MAPPED_PATHS = 1024;
+
   private final String myToken;
-  private final ServerPaths myPaths;
+  private final File myIncludeFilesBase;
+  private final ConcurrentMap<String, File> myMappedPaths = new ConcurrentHashMap<String, File>();
 
   public ConfigurationImpl(@NotNull final ServerPaths paths) {
     myToken = StringUtil.generateUniqueHash();
-    myPaths = paths;
+    myIncludeFilesBase = new File(paths.getConfigDir(), "_static_ui_extensions");
   }
 
   @NotNull
@@ -41,15 +46,27 @@ public class ConfigurationImpl implements Configuration {
     return new File(getIncludeFilesBase(), "static-ui-extensions.xml");
   }
 
+  /**
+   * Mapped files are reused, so that included files are looked up
+   * in the content cache without creating new objects on each request
+   */
   public File mapIncludeFilePath(@NotNull String path) {
+    final File mapped = myMappedPaths.get(path);
+    if (mapped != null) return mapped;
+
     if (path.contains("/") || path.contains("\\") || path.contains("..")) return null;
 
-    return new File(getIncludeFilesBase(), path);
+    final File file = new File(getIncludeFilesBase(), path);
+    if (myMappedPaths.size() >= MAX_MAPPED_PATHS) {
+      myMappedPaths.clear();
+    }
+    myMappedPaths.put(path, file);
+    return file;
   }
 
   @NotNull
   public File getIncludeFilesBase() {
-    return new File(myPaths.getConfigDir(), "_static_ui_extensions");
+    return myIncludeFilesBase;
   }
 
   @NotNull
@@ -2,6 +2,7 @@ package jetbrains.buildServer.staticUIExtensions.config;
 
 import jetbrains.buildServer.staticUIExtensions.ConfigurationException;
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -14,4 +15,7 @@ import java.util.Collection;
 public interface ConfigurationReader {
   @NotNull
   Collection<Rule> parseConfiguration(@NotNull File config) throws ConfigurationException;
+
+  @NotNull
+  Settings parseSettings(@NotNull File config) throws ConfigurationException;
 }
@@ -30,7 +30,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -45,9 +47,18 @@ public class ConfigurationReaderImpl implements ConfigurationReader {
 
   @NotNull
   public Collection<Rule> parseConfiguration(@NotNull final File config) throws ConfigurationException {
+    return processXml(parseDocument(config));
+  }
+
+  @NotNull
+  public Settings parseSettings(@NotNull final File config) throws ConfigurationException {
+    return processSettings(parseDocument(config));
+  }
+
+  @NotNull
+  private Element parseDocument(@NotNull final File config) throws ConfigurationException {
     try {
-      final Element root = FileUtil.parseDocument(config);
-      return processXml(root);
+      return FileUtil.parseDocument(config);
     } catch (JDOMException e) {
       throw new ConfigurationException("Failed to parse configuration file: " + e.getMessage(), e);
     } catch (IOException e) {
@@ -55,6 +66,24 @@ public class ConfigurationReaderImpl implements ConfigurationReader {
     }
   }
 
+  @NotNull
+  private Settings processSettings(@NotNull final Element root) throws ConfigurationException {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (Object settings : root.getChildren("settings")) {
+      for (Object param : ((Element) settings).getChildren("param")) {
+        final Element xmlParam = (Element) param;
+
+        final String name = xmlParam.getAttributeValue("name");
+        final String value = xmlParam.getAttributeValue("value");
+        if (name == null || value == null) {
+          throw new ConfigurationException("Settings parameter must have name and value: " + XmlUtil.to_s(xmlParam));
+        }
+        params.put(name.trim(), value.trim());
+      }
+    }
+    return params.isEmpty() ? Settings.EMPTY : new Settings(params);
+  }
+
   @NotNull
   private Collection<Rule> processXml(@NotNull final Element root) throws ConfigurationException {
     final List rules = root.getChildren("rule");
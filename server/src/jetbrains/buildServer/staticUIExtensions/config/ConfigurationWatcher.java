@@ -23,30 +23,60 @@ import jetbrains.buildServer.staticUIExtensions.Configuration;
 import jetbrains.buildServer.staticUIExtensions.ConfigurationChangeListener;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Reloads configuration when configuration file changes.
+ * <p/>
+ * Changes are debounced: configuration is reloaded only after the file was not
+ * modified for the quiet period, so a burst of writes (e.g. an editor saving in
+ * several steps) results in a single reload and a half-written file is not parsed.
+ * Reload is skipped if the content of the file is the same as on the previous reload.
+ * <p/>
+ * Configuration is parsed and applied on a dedicated thread, one reload at a time,
+ * so {@link #startWatching()} returns immediately. {@link #stopWatching()} lets a reload
+ * in progress complete and cancels reloads that have not started yet.
+ *
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 20:09
  */
 public class ConfigurationWatcher {
   private static final Logger LOG = Logger.getInstance(ConfigurationWatcher.class.getName());
+  private static final long STOP_TIMEOUT_SECONDS = 10;
 
   private final FileWatcher myConfigWatcher;
   @NotNull
   private final Configuration myConfig;
   @NotNull
   private final Collection<ConfigurationChangeListener> myListeners;
+  @NotNull
+  private final ConfigurationFingerprint myFingerprint;
+  private ScheduledExecutorService myExecutor;
+  private volatile long myQuietPeriod = 300;
+  private boolean myReloadScheduled = false;
+  private FileStamp myLastStamp;
+  private byte[] myLastFingerprint;
+  private final AtomicInteger myAppliedReloads = new AtomicInteger();
+  private final AtomicInteger mySkippedReloads = new AtomicInteger();
 
   public ConfigurationWatcher(@NotNull final Configuration config,
-                              @NotNull final Collection<ConfigurationChangeListener> listeners) {
+                              @NotNull final Collection<ConfigurationChangeListener> listeners,
+                              @NotNull final ConfigurationFingerprint fingerprint) {
     myConfig = config;
     myListeners = listeners;
+    myFingerprint = fingerprint;
     myConfigWatcher = new FileWatcher(config.getConfigurationXml());
-    myConfigWatcher.setSleepingPeriod(5000);
+    myConfigWatcher.setSleepingPeriod(1000);
     myConfigWatcher.registerListener(new ChangeListener() {
       public void changeOccured(String requestor) {
-        ConfigurationWatcher.this.configurationFileChanged();
+        ConfigurationWatcher.this.scheduleReload();
       }
     });
   }
@@ -55,19 +85,152 @@ public class ConfigurationWatcher {
     myConfigWatcher.setSleepingPeriod(interval);
   }
 
+  /**
+   * @param quietPeriod time in milliseconds the configuration file must stay unchanged before it is reloaded
+   */
+  public void setQuietPeriod(long quietPeriod) {
+    myQuietPeriod = quietPeriod;
+  }
+
   public void startWatching() {
-    configurationFileChanged();
+    synchronized (this) {
+      if (myExecutor == null) {
+        myExecutor = createExecutor();
+      }
+      myLastFingerprint = null;
+      myExecutor.execute(new Runnable() {
+        public void run() {
+          configurationFileChanged();
+        }
+      });
+    }
     myConfigWatcher.start();
   }
 
+  /**
+   * @return single threaded executor to run reloads and quiet period checks on
+   */
+  @NotNull
+  protected ScheduledExecutorService createExecutor() {
+    final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(@NotNull final Runnable r) {
+        final Thread thread = new Thread(r, "StaticUIExtensions configuration reload");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    return executor;
+  }
+
   public void stopWatching() {
     myConfigWatcher.stop();
+    final ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = myExecutor;
+      myExecutor = null;
+      myReloadScheduled = false;
+    }
+    if (executor == null) return;
+
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("StaticUIExtensions configuration reload did not complete in " + STOP_TIMEOUT_SECONDS + " seconds");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized void scheduleReload() {
+    if (myReloadScheduled) return;
+    myReloadScheduled = true;
+    myLastStamp = new FileStamp(myConfig.getConfigurationXml());
+    schedule();
+  }
+
+  private void schedule() {
+    if (myExecutor == null) return;
+    myExecutor.schedule(new Runnable() {
+      public void run() {
+        reloadIfStable();
+      }
+    }, myQuietPeriod, TimeUnit.MILLISECONDS);
+  }
+
+  private void reloadIfStable() {
+    synchronized (this) {
+      final FileStamp stamp = new FileStamp(myConfig.getConfigurationXml());
+      if (!stamp.equals(myLastStamp)) {
+        LOG.debug("Configuration file " + myConfig.getConfigurationXml() + " is still being changed. Reload is postponed.");
+        myLastStamp = stamp;
+        schedule();
+        return;
+      }
+      myReloadScheduled = false;
+    }
+    configurationFileChanged();
+  }
+
+  /**
+   * @return number of reloads passed to configuration listeners
+   */
+  public int getAppliedReloadsCount() {
+    return myAppliedReloads.get();
+  }
+
+  /**
+   * @return number of detected changes that were ignored because content of the file was not changed
+   */
+  public int getSkippedReloadsCount() {
+    return mySkippedReloads.get();
   }
 
   private void configurationFileChanged() {
+    final byte[] fingerprint = myFingerprint.update(myConfig.getConfigurationXml());
+    synchronized (this) {
+      if (fingerprint != null && Arrays.equals(fingerprint, myLastFingerprint)) {
+        mySkippedReloads.incrementAndGet();
+        LOG.debug("Content of " + myConfig.getConfigurationXml() + " is not changed. StaticUIExtensions config reload is skipped.");
+        return;
+      }
+      myLastFingerprint = fingerprint;
+    }
+    myAppliedReloads.incrementAndGet();
+
     LOG.info("Detected change in " + myConfig.getConfigurationXml() + ". StaticUIExtensions config will be reloaded. ");
     for (ConfigurationChangeListener listener : myListeners) {
-      listener.configurationChanged();
+      try {
+        listener.configurationChanged();
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to apply StaticUIExtensions configuration: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private static class FileStamp {
+    private final boolean myExists;
+    private final long myLength;
+    private final long myLastModified;
+
+    private FileStamp(@NotNull final File file) {
+      myExists = file.exists();
+      myLength = file.length();
+      myLastModified = file.lastModified();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof FileStamp)) return false;
+      final FileStamp that = (FileStamp) o;
+      return myExists == that.myExists && myLength == that.myLength && myLastModified == that.myLastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * (myExists ? 1 : 0) + (int) (myLength ^ (myLength >>> 32))) + (int) (myLastModified ^ (myLastModified >>> 32));
     }
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.config;
+
+import jetbrains.buildServer.staticUIExtensions.ConfigurationException;
+import jetbrains.buildServer.staticUIExtensions.PagePlacesCollector;
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads configuration file in one pass without building a document tree.
+ * Produces the same rules and settings as {@link ConfigurationReaderImpl}.
+ */
+public class StaxConfigurationReader implements ConfigurationReader {
+  private final PagePlacesCollector myCollector;
+  private final XMLInputFactory myFactory;
+
+  public StaxConfigurationReader(@NotNull final PagePlacesCollector collector) {
+    myCollector = collector;
+    myFactory = XMLInputFactory.newInstance();
+    myFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    myFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+  }
+
+  @NotNull
+  public Collection<Rule> parseConfiguration(@NotNull final File config) throws ConfigurationException {
+    final RulesHandler handler = new RulesHandler();
+    read(config, handler);
+    return handler.myRules;
+  }
+
+  @NotNull
+  public Settings parseSettings(@NotNull final File config) throws ConfigurationException {
+    final SettingsHandler handler = new SettingsHandler();
+    read(config, handler);
+    return handler.myParams.isEmpty() ? Settings.EMPTY : new Settings(handler.myParams);
+  }
+
+  private void read(@NotNull final File config, @NotNull final Handler handler) throws ConfigurationException {
+    InputStream is = null;
+    XMLStreamReader xml = null;
+    try {
+      is = new BufferedInputStream(new FileInputStream(config));
+      xml = myFactory.createXMLStreamReader(is);
+
+      int depth = -1;
+      while (xml.hasNext()) {
+        switch (xml.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            handler.startElement(xml, ++depth);
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            handler.endElement(xml, depth--);
+            break;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new ConfigurationException("Failed to parse configuration file: " + e.getMessage(), e);
+    } catch (IOException e) {
+      throw new ConfigurationException("Failed to read configuration file: " + e.getMessage(), e);
+    } finally {
+      if (xml != null) {
+        try {
+          xml.close();
+        } catch (XMLStreamException e) {
+          //NOP
+        }
+      }
+      FileUtil.close(is);
+    }
+  }
+
+  private static abstract class Handler {
+    public abstract void startElement(@NotNull XMLStreamReader xml, int depth) throws ConfigurationException;
+
+    public void endElement(@NotNull XMLStreamReader xml, int depth) throws ConfigurationException {
+    }
+  }
+
+  private class RulesHandler extends Handler {
+    private final List<Rule> myRules = new ArrayList<Rule>();
+    private PlaceId myPlace;
+    private StaticContent myContent;
+    private List<UrlMatcher> myMatchers;
+
+    @Override
+    public void startElement(@NotNull final XMLStreamReader xml, final int depth) throws ConfigurationException {
+      if (depth == 1 && "rule".equals(xml.getLocalName())) {
+        final StaticContent content = new StaticContent(attribute(xml, "html-file"), attribute(xml, "js-file"), attribute(xml, "css-file"));
+        if (!content.isValid()) {
+          throw new ConfigurationException("Rule does not contain any file to include. " + describe(xml));
+        }
+
+        final String placeId = attribute(xml, "place-id");
+        if (placeId == null) {
+          throw new ConfigurationException("Rule contains unknown place-id: " + describe(xml));
+        }
+
+        myPlace = myCollector.findByName(placeId);
+        myContent = content;
+        myMatchers = new ArrayList<UrlMatcher>();
+        return;
+      }
+
+      if (depth == 2 && myMatchers != null && "url".equals(xml.getLocalName())) {
+        final List<UrlMatcher> childMatch = new ArrayList<UrlMatcher>();
+
+        final String startsWith = attribute(xml, "starts");
+        if (startsWith != null) {
+          childMatch.add(new StartsWithMatcher(startsWith.trim()));
+        }
+
+        final String equals = attribute(xml, "equals");
+        if (equals != null) {
+          childMatch.add(new EqualsMatcher(equals.trim()));
+        }
+
+        final String contains = attribute(xml, "contains");
+        if (contains != null) {
+          childMatch.add(new ContainsMatcher(contains.trim()));
+        }
+
+        if (childMatch.isEmpty()) {
+          throw new ConfigurationException("No url matching rules found: " + describe(xml));
+        }
+
+        myMatchers.add(new AndMatcher(childMatch));
+      }
+    }
+
+    @Override
+    public void endElement(@NotNull final XMLStreamReader xml, final int depth) {
+      if (depth != 1 || myMatchers == null) return;
+
+      myRules.add(new Rule("_" + myRules.size(), myMatchers.isEmpty() ? new TrueMatcher() : new OrMatcher(myMatchers), myPlace, myContent));
+      myPlace = null;
+      myContent = null;
+      myMatchers = null;
+    }
+  }
+
+  private static class SettingsHandler extends Handler {
+    private final Map<String, String> myParams = new HashMap<String, String>();
+    private boolean myInSettings;
+
+    @Override
+    public void startElement(@NotNull final XMLStreamReader xml, final int depth) throws ConfigurationException {
+      if (depth == 1) {
+        myInSettings = "settings".equals(xml.getLocalName());
+        return;
+      }
+
+      if (depth == 2 && myInSettings && "param".equals(xml.getLocalName())) {
+        final String name = attribute(xml, "name");
+        final String value = attribute(xml, "value");
+        if (name == null || value == null) {
+          throw new ConfigurationException("Settings parameter must have name and value: " + describe(xml));
+        }
+        myParams.put(name.trim(), value.trim());
+      }
+    }
+  }
+
+  @Nullable
+  private static String attribute(@NotNull final XMLStreamReader xml, @NotNull final String name) {
+    return xml.getAttributeValue(null, name);
+  }
+
+  @NotNull
+  private static String describe(@NotNull final XMLStreamReader xml) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append('<').append(xml.getLocalName());
+    for (int i = 0; i < xml.getAttributeCount(); i++) {
+      sb.append(' ').append(xml.getAttributeLocalName(i)).append("=\"").append(xml.getAttributeValue(i)).append('"');
+    }
+    sb.append("/> at line ").append(xml.getLocation().getLineNumber());
+    return sb.toString();
+  }
+}
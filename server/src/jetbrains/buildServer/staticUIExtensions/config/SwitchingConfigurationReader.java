@@ -0,0 +1,58 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.config;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.staticUIExtensions.ConfigurationException;
+import jetbrains.buildServer.staticUIExtensions.PagePlacesCollector;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * Parses configuration with the JDOM reader. The StAX reader is used instead
+ * only if it is enabled with the {@link #STAX_PROPERTY} internal property.
+ */
+public class SwitchingConfigurationReader implements ConfigurationReader {
+  public static final String STAX_PROPERTY = "teamcity.staticUIExtensions.staxReader.enabled";
+
+  private final ConfigurationReader myJdomReader;
+  private final ConfigurationReader myStaxReader;
+
+  public SwitchingConfigurationReader(@NotNull final PagePlacesCollector collector) {
+    myJdomReader = new ConfigurationReaderImpl(collector);
+    myStaxReader = new StaxConfigurationReader(collector);
+  }
+
+  @NotNull
+  public Collection<Rule> parseConfiguration(@NotNull final File config) throws ConfigurationException {
+    return getReader().parseConfiguration(config);
+  }
+
+  @NotNull
+  public Settings parseSettings(@NotNull final File config) throws ConfigurationException {
+    return getReader().parseSettings(config);
+  }
+
+  @NotNull
+  private ConfigurationReader getReader() {
+    return TeamCityProperties.getBoolean(STAX_PROPERTY) ? myStaxReader : myJdomReader;
+  }
+}
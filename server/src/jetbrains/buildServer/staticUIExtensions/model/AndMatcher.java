@@ -18,6 +18,7 @@ package jetbrains.buildServer.staticUIExtensions.model;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 
 /**
@@ -31,6 +32,11 @@ public class AndMatcher implements UrlMatcher {
     myMatchers = matchers;
   }
 
+  @NotNull
+  public Collection<UrlMatcher> getMatchers() {
+    return myMatchers;
+  }
+
   public boolean matches(@NotNull String url) {
     for (UrlMatcher matcher : myMatchers) {
       if (!matcher.matches(url)) return false;
@@ -38,6 +44,20 @@ public class AndMatcher implements UrlMatcher {
     return true;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final AndMatcher that = (AndMatcher) o;
+    return new ArrayList<UrlMatcher>(myMatchers).equals(new ArrayList<UrlMatcher>(that.myMatchers));
+  }
+
+  @Override
+  public int hashCode() {
+    return new ArrayList<UrlMatcher>(myMatchers).hashCode();
+  }
+
   @Override
   public String toString() {
     return "AndMatcher{" +
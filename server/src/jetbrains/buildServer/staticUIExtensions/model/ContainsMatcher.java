@@ -25,10 +25,29 @@ public class ContainsMatcher implements UrlMatcher {
     mySubstring = substring;
   }
 
+  @NotNull
+  public String getSubstring() {
+    return mySubstring;
+  }
+
   public boolean matches(@NotNull String url) {
     return url.contains(mySubstring);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final ContainsMatcher that = (ContainsMatcher) o;
+    return mySubstring.equals(that.mySubstring);
+  }
+
+  @Override
+  public int hashCode() {
+    return mySubstring.hashCode();
+  }
+
   @Override
   public String toString() {
     return "ContainsMatcher{" +
@@ -29,14 +29,33 @@ public class EqualsMatcher implements UrlMatcher {
     myEq = eq;
   }
 
+  @NotNull
+  public String getValue() {
+    return myEq;
+  }
+
   public boolean matches(@NotNull String url) {
     return url.equals(myEq);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final EqualsMatcher that = (EqualsMatcher) o;
+    return myEq.equals(that.myEq);
+  }
+
+  @Override
+  public int hashCode() {
+    return myEq.hashCode();
+  }
+
   @Override
   public String toString() {
     return "EqualsMatcher{" +
             "myPrefix='" + myEq + '\'' +
             '}';
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -18,6 +18,7 @@ package jetbrains.buildServer.staticUIExtensions.model;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 
 /**
@@ -31,6 +32,11 @@ public class OrMatcher implements UrlMatcher {
     myMatchers = matchers;
   }
 
+  @NotNull
+  public Collection<UrlMatcher> getMatchers() {
+    return myMatchers;
+  }
+
   public boolean matches(@NotNull String url) {
     for (UrlMatcher matcher : myMatchers) {
       if (matcher.matches(url)) return true;
@@ -38,6 +44,20 @@ public class OrMatcher implements UrlMatcher {
     return myMatchers.isEmpty();
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final OrMatcher that = (OrMatcher) o;
+    return new ArrayList<UrlMatcher>(myMatchers).equals(new ArrayList<UrlMatcher>(that.myMatchers));
+  }
+
+  @Override
+  public int hashCode() {
+    return new ArrayList<UrlMatcher>(myMatchers).hashCode();
+  }
+
   @Override
   public String toString() {
     return "OrMatcher{" +
@@ -60,6 +60,27 @@ public class Rule {
     return myContent;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final Rule rule = (Rule) o;
+    return myRuleId.equals(rule.myRuleId)
+            && myUrlMatcher.equals(rule.myUrlMatcher)
+            && myPlace.equals(rule.myPlace)
+            && myContent.equals(rule.myContent);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = myRuleId.hashCode();
+    result = 31 * result + myUrlMatcher.hashCode();
+    result = 31 * result + myPlace.hashCode();
+    result = 31 * result + myContent.hashCode();
+    return result;
+  }
+
   @Override
   public String toString() {
     return "Rule{" +
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Url matchers of all rules compiled together, so that a single scan of the url
+ * finds all matching rules.
+ * <p/>
+ * Prefixes are looked up in a trie, exact urls in a hash map and substrings
+ * with an Aho-Corasick automaton. Rules are then evaluated over the set of matched
+ * conditions without any further string operations.
+ * Unknown {@link UrlMatcher} implementations are called directly.
+ */
+public class RulesMatcher {
+  private final Map<String, Integer> myRuleIndexes = new HashMap<String, Integer>();
+  private final String[] myRuleIds;
+  private final Condition[] myRules;
+  private final Map<String, Integer> myEquals = new HashMap<String, Integer>();
+  private final Node myPrefixes = new Node();
+  private final Node mySubstrings = new Node();
+  private int myAtomsCount = 0;
+
+  public RulesMatcher(@NotNull final Collection<Rule> rules) {
+    final Map<String, Integer> prefixes = new HashMap<String, Integer>();
+    final Map<String, Integer> substrings = new HashMap<String, Integer>();
+
+    myRules = new Condition[rules.size()];
+    myRuleIds = new String[rules.size()];
+    int i = 0;
+    for (Rule rule : rules) {
+      myRuleIndexes.put(rule.getRuleId(), i);
+      myRuleIds[i] = rule.getRuleId();
+      myRules[i++] = compile(rule.getUrlMatcher(), prefixes, substrings);
+    }
+
+    for (Map.Entry<String, Integer> e : prefixes.entrySet()) {
+      myPrefixes.add(e.getKey(), e.getValue());
+    }
+    for (Map.Entry<String, Integer> e : substrings.entrySet()) {
+      mySubstrings.add(e.getKey(), e.getValue());
+    }
+    buildFailureLinks(mySubstrings);
+  }
+
+  /**
+   * @param url url to match
+   * @return all rules that match given url
+   */
+  @NotNull
+  public Match match(@NotNull final String url) {
+    final BitSet atoms = new BitSet(myAtomsCount);
+
+    final Integer eq = myEquals.get(url);
+    if (eq != null) atoms.set(eq);
+
+    Node node = myPrefixes;
+    node.mark(atoms);
+    for (int i = 0; i < url.length() && node != null; i++) {
+      node = node.get(url.charAt(i));
+      if (node != null) node.mark(atoms);
+    }
+
+    node = mySubstrings;
+    node.mark(atoms);
+    for (int i = 0; i < url.length(); i++) {
+      final char c = url.charAt(i);
+      Node next = node.get(c);
+      while (next == null && node != mySubstrings) {
+        node = node.myFailure;
+        next = node.get(c);
+      }
+      node = next != null ? next : mySubstrings;
+      node.mark(atoms);
+    }
+
+    final BitSet rules = new BitSet(myRules.length);
+    for (int i = 0; i < myRules.length; i++) {
+      if (myRules[i].matches(atoms, url)) rules.set(i);
+    }
+    return new Match(rules);
+  }
+
+  public class Match {
+    private final BitSet myRulesMatched;
+    private volatile List<String> myRuleIdsMatched;
+
+    private Match(@NotNull final BitSet rulesMatched) {
+      myRulesMatched = rulesMatched;
+    }
+
+    public boolean matches(@NotNull final String ruleId) {
+      final Integer idx = myRuleIndexes.get(ruleId);
+      return idx != null && myRulesMatched.get(idx);
+    }
+
+    @NotNull
+    public RulesMatcher getRulesMatcher() {
+      return RulesMatcher.this;
+    }
+
+    public boolean isEmpty() {
+      return myRulesMatched.isEmpty();
+    }
+
+    /**
+     * @return ids of matched rules in the order of rules in configuration
+     */
+    @NotNull
+    public List<String> getRuleIds() {
+      List<String> ids = myRuleIdsMatched;
+      if (ids == null) {
+        ids = new ArrayList<String>(myRulesMatched.cardinality());
+        for (int i = myRulesMatched.nextSetBit(0); i >= 0; i = myRulesMatched.nextSetBit(i + 1)) {
+          ids.add(myRuleIds[i]);
+        }
+        ids = Collections.unmodifiableList(ids);
+        myRuleIdsMatched = ids;
+      }
+      return ids;
+    }
+  }
+
+  @NotNull
+  private Condition compile(@NotNull final UrlMatcher matcher,
+                            @NotNull final Map<String, Integer> prefixes,
+                            @NotNull final Map<String, Integer> substrings) {
+    if (matcher instanceof TrueMatcher) {
+      return TRUE;
+    }
+    if (matcher instanceof StartsWithMatcher) {
+      return new AtomCondition(atom(prefixes, ((StartsWithMatcher) matcher).getPrefix()));
+    }
+    if (matcher instanceof EqualsMatcher) {
+      return new AtomCondition(atom(myEquals, ((EqualsMatcher) matcher).getValue()));
+    }
+    if (matcher instanceof ContainsMatcher) {
+      return new AtomCondition(atom(substrings, ((ContainsMatcher) matcher).getSubstring()));
+    }
+    if (matcher instanceof AndMatcher || matcher instanceof OrMatcher) {
+      final boolean and = matcher instanceof AndMatcher;
+      final Collection<UrlMatcher> children = and ? ((AndMatcher) matcher).getMatchers() : ((OrMatcher) matcher).getMatchers();
+      final Condition[] conditions = new Condition[children.size()];
+      int i = 0;
+      for (UrlMatcher child : children) {
+        conditions[i++] = compile(child, prefixes, substrings);
+      }
+      return and ? new AndCondition(conditions) : new OrCondition(conditions);
+    }
+    return new MatcherCondition(matcher);
+  }
+
+  private int atom(@NotNull final Map<String, Integer> atoms, @NotNull final String text) {
+    Integer id = atoms.get(text);
+    if (id == null) {
+      id = myAtomsCount++;
+      atoms.put(text, id);
+    }
+    return id;
+  }
+
+  private static void buildFailureLinks(@NotNull final Node root) {
+    final Queue<Node> queue = new LinkedList<Node>();
+    root.myFailure = root;
+    for (Node child : root.myChildren.values()) {
+      child.myFailure = root;
+      queue.add(child);
+    }
+
+    while (!queue.isEmpty()) {
+      final Node node = queue.poll();
+      for (Map.Entry<Character, Node> e : node.myChildren.entrySet()) {
+        final char c = e.getKey();
+        final Node child = e.getValue();
+
+        Node failure = node.myFailure;
+        while (failure != root && failure.get(c) == null) {
+          failure = failure.myFailure;
+        }
+        final Node target = failure.get(c);
+        child.myFailure = target != null && target != child ? target : root;
+        child.addAtoms(child.myFailure.myAtoms);
+        queue.add(child);
+      }
+    }
+  }
+
+  private static class Node {
+    private final Map<Character, Node> myChildren = new HashMap<Character, Node>();
+    private int[] myAtoms = new int[0];
+    private Node myFailure;
+
+    public Node get(char c) {
+      return myChildren.get(c);
+    }
+
+    public void add(@NotNull final String text, final int atom) {
+      Node node = this;
+      for (int i = 0; i < text.length(); i++) {
+        Node next = node.get(text.charAt(i));
+        if (next == null) {
+          next = new Node();
+          node.myChildren.put(text.charAt(i), next);
+        }
+        node = next;
+      }
+      node.addAtoms(new int[]{atom});
+    }
+
+    public void addAtoms(@NotNull final int[] atoms) {
+      if (atoms.length == 0) return;
+      final int[] result = new int[myAtoms.length + atoms.length];
+      System.arraycopy(myAtoms, 0, result, 0, myAtoms.length);
+      System.arraycopy(atoms, 0, result, myAtoms.length, atoms.length);
+      myAtoms = result;
+    }
+
+    public void mark(@NotNull final BitSet atoms) {
+      for (int atom : myAtoms) {
+        atoms.set(atom);
+      }
+    }
+  }
+
+  private static interface Condition {
+    boolean matches(@NotNull BitSet atoms, @NotNull String url);
+  }
+
+  private static final Condition TRUE = new Condition() {
+    public boolean matches(@NotNull BitSet atoms, @NotNull String url) {
+      return true;
+    }
+  };
+
+  private static class AtomCondition implements Condition {
+    private final int myAtom;
+
+    private AtomCondition(final int atom) {
+      myAtom = atom;
+    }
+
+    public boolean matches(@NotNull BitSet atoms, @NotNull String url) {
+      return atoms.get(myAtom);
+    }
+  }
+
+  private static class AndCondition implements Condition {
+    private final Condition[] myConditions;
+
+    private AndCondition(@NotNull final Condition[] conditions) {
+      myConditions = conditions;
+    }
+
+    public boolean matches(@NotNull BitSet atoms, @NotNull String url) {
+      for (Condition condition : myConditions) {
+        if (!condition.matches(atoms, url)) return false;
+      }
+      return true;
+    }
+  }
+
+  private static class OrCondition implements Condition {
+    private final Condition[] myConditions;
+
+    private OrCondition(@NotNull final Condition[] conditions) {
+      myConditions = conditions;
+    }
+
+    public boolean matches(@NotNull BitSet atoms, @NotNull String url) {
+      for (Condition condition : myConditions) {
+        if (condition.matches(atoms, url)) return true;
+      }
+      return myConditions.length == 0;
+    }
+  }
+
+  private static class MatcherCondition implements Condition {
+    private final UrlMatcher myMatcher;
+
+    private MatcherCondition(@NotNull final UrlMatcher matcher) {
+      myMatcher = matcher;
+    }
+
+    public boolean matches(@NotNull BitSet atoms, @NotNull String url) {
+      return myMatcher.matches(url);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Plugin settings from the &lt;settings&gt; section of the configuration file
+ */
+public class Settings {
+  public static final Settings EMPTY = new Settings(Collections.<String, String>emptyMap());
+
+  @NotNull private final Map<String, String> myParams;
+
+  public Settings(@NotNull final Map<String, String> params) {
+    myParams = Collections.unmodifiableMap(new TreeMap<String, String>(params));
+  }
+
+  @NotNull
+  public Map<String, String> getParams() {
+    return myParams;
+  }
+
+  @Nullable
+  public String getString(@NotNull final String name) {
+    return myParams.get(name);
+  }
+
+  public long getLong(@NotNull final String name, final long defaultValue) {
+    final String value = getString(name);
+    if (value == null) return defaultValue;
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public int getInt(@NotNull final String name, final int defaultValue) {
+    final long value = getLong(name, defaultValue);
+    if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return defaultValue;
+    return (int) value;
+  }
+
+  public boolean getBoolean(@NotNull final String name, final boolean defaultValue) {
+    final String value = getString(name);
+    if (value == null) return defaultValue;
+    return Boolean.parseBoolean(value.trim());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Settings)) return false;
+    return myParams.equals(((Settings) o).myParams);
+  }
+
+  @Override
+  public int hashCode() {
+    return myParams.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "Settings{" +
+            "myParams=" + myParams +
+            '}';
+  }
+}
@@ -29,10 +29,29 @@ public class StartsWithMatcher implements UrlMatcher {
     myPrefix = prefix;
   }
 
+  @NotNull
+  public String getPrefix() {
+    return myPrefix;
+  }
+
   public boolean matches(@NotNull String url) {
     return url.startsWith(myPrefix);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final StartsWithMatcher that = (StartsWithMatcher) o;
+    return myPrefix.equals(that.myPrefix);
+  }
+
+  @Override
+  public int hashCode() {
+    return myPrefix.hashCode();
+  }
+
   @Override
   public String toString() {
     return "StartsWithMatcher{" +
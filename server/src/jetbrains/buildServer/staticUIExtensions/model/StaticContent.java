@@ -62,6 +62,27 @@ public class StaticContent {
     return getCSS() != null || getJS() != null || getHTML() != null;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final StaticContent that = (StaticContent) o;
+    return equal(myHTML, that.myHTML) && equal(myJS, that.myJS) && equal(myCSS, that.myCSS);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = myHTML != null ? myHTML.hashCode() : 0;
+    result = 31 * result + (myJS != null ? myJS.hashCode() : 0);
+    result = 31 * result + (myCSS != null ? myCSS.hashCode() : 0);
+    return result;
+  }
+
+  private static boolean equal(@Nullable final String a, @Nullable final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
   @Override
   public String toString() {
     return "StaticContent{" +
@@ -27,6 +27,16 @@ public class TrueMatcher implements UrlMatcher{
     return true;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof TrueMatcher;
+  }
+
+  @Override
+  public int hashCode() {
+    return TrueMatcher.class.hashCode();
+  }
+
   public String toString() {
     return "TrueMatcher";
   }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.controllers.AuthorizationInterceptor;
+import jetbrains.buildServer.controllers.BaseController;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves CSS and JS files linked from pages by {@link StaticAssets}.
+ * An asset name is the hash of its content, so responses never change and are cached by browsers without revalidation.
+ */
+public class AssetsController extends BaseController {
+  public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  private final ControllerPaths myPaths;
+  private final StaticAssets myAssets;
+
+  public AssetsController(@NotNull final AuthorizationInterceptor auth,
+                          @NotNull final WebControllerManager web,
+                          @NotNull final ControllerPaths paths,
+                          @NotNull final StaticAssets assets) {
+    myPaths = paths;
+    myAssets = assets;
+    final String path = paths.getAssetsControllerRegistrationBase();
+    web.registerController(path, this);
+    auth.addPathNotRequiringAuth(path);
+  }
+
+  @Nullable
+  @Override
+  protected ModelAndView doHandle(@NotNull final HttpServletRequest request,
+                                  @NotNull final HttpServletResponse response) throws Exception {
+    final String name = request.getParameter(myPaths.getAssetNameParameter());
+    final StaticAssets.Asset asset = name == null ? null : myAssets.getAsset(name);
+    if (asset == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return null;
+    }
+
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    response.setHeader("ETag", asset.getETag());
+
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null && (ifNoneMatch.contains(asset.getETag()) || ifNoneMatch.trim().equals("*"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return null;
+    }
+
+    final byte[] data = asset.getData();
+    response.setContentType(asset.getContentType());
+    response.setContentLength(data.length);
+    if (!"HEAD".equals(request.getMethod())) {
+      response.getOutputStream().write(data);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Cache-Control header values per path pattern. Patterns are taken from settings
+ * named {@code pages.cache-control.<pattern>}, where {@code *} matches a part
+ * of a path segment and {@code **} matches any number of segments.
+ * The longest matching pattern wins.
+ */
+public class CacheControlPolicy {
+  public static final String PARAM_PREFIX = "pages.cache-control.";
+  public static final CacheControlPolicy EMPTY = new CacheControlPolicy(Settings.EMPTY);
+
+  private final List<Rule> myRules = new ArrayList<Rule>();
+
+  public CacheControlPolicy(@NotNull final Settings settings) {
+    for (Map.Entry<String, String> e : settings.getParams().entrySet()) {
+      if (!e.getKey().startsWith(PARAM_PREFIX)) continue;
+      final String pattern = e.getKey().substring(PARAM_PREFIX.length());
+      if (pattern.length() == 0) continue;
+      myRules.add(new Rule(pattern, e.getValue()));
+    }
+    Collections.sort(myRules, new Comparator<Rule>() {
+      public int compare(Rule o1, Rule o2) {
+        return o2.myPattern.length() - o1.myPattern.length();
+      }
+    });
+  }
+
+  /**
+   * @param path path relative to the served folder
+   * @return Cache-Control header value or null if no pattern matches
+   */
+  @Nullable
+  public String getCacheControl(@NotNull final String path) {
+    for (Rule rule : myRules) {
+      if (rule.myRegex.matcher(path).matches()) {
+        return rule.myValue;
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private static Pattern compile(@NotNull final String pattern) {
+    final StringBuilder sb = new StringBuilder();
+    int i = 0;
+    while (i < pattern.length()) {
+      final char c = pattern.charAt(i);
+      if (pattern.startsWith("**/", i)) {
+        sb.append("(?:.*/)?");
+        i += 3;
+      } else if (pattern.startsWith("**", i)) {
+        sb.append(".*");
+        i += 2;
+      } else if (c == '*') {
+        sb.append("[^/]*");
+        i++;
+      } else if (c == '?') {
+        sb.append("[^/]");
+        i++;
+      } else {
+        sb.append(Pattern.quote(String.valueOf(c)));
+        i++;
+      }
+    }
+    return Pattern.compile(sb.toString());
+  }
+
+  private static class Rule {
+    private final String myPattern;
+    private final Pattern myRegex;
+    private final String myValue;
+
+    private Rule(@NotNull final String pattern, @NotNull final String value) {
+      myPattern = pattern;
+      myRegex = compile(pattern.startsWith("/") ? pattern.substring(1) : pattern);
+      myValue = value;
+    }
+  }
+}
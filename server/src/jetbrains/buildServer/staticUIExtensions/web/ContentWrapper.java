@@ -0,0 +1,117 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Wraps included file content into the markup it is rendered with.
+ * Wrapped content is rendered either as text, into the writer of the including page,
+ * or as bytes encoded with {@link #ENCODING}.
+ */
+public class ContentWrapper {
+  public static final String ENCODING = "UTF-8";
+
+  public static final ContentWrapper CSS = new ContentWrapper("css", "\n<style type=\"text/css\">\n", "\n</style>\n");
+  public static final ContentWrapper JS = new ContentWrapper("js", "\n<script type=\"text/javascript\">\n", "\n</script>\n");
+  public static final ContentWrapper HTML = new ContentWrapper("html", "", "");
+  /**
+   * Keeps file bytes as is, used for files that are served directly
+   */
+  public static final ContentWrapper RAW = new ContentWrapper("raw", "", "") {
+    @NotNull
+    @Override
+    public byte[] read(@NotNull final File file) throws IOException {
+      return FileUtil.loadFileBytes(file);
+    }
+
+    @Override
+    public boolean isText() {
+      return false;
+    }
+  };
+
+  @NotNull
+  private final String myName;
+  @NotNull
+  private final String myPrefix;
+  @NotNull
+  private final String mySuffix;
+
+  protected ContentWrapper(@NotNull final String name,
+                           @NotNull final String prefix,
+                           @NotNull final String suffix) {
+    myName = name;
+    myPrefix = prefix;
+    mySuffix = suffix;
+  }
+
+  /**
+   * @return content of the file wrapped and encoded
+   */
+  @NotNull
+  public byte[] read(@NotNull final File file) throws IOException {
+    return encode(readText(file));
+  }
+
+  /**
+   * @return content of the file wrapped
+   */
+  @NotNull
+  public String readText(@NotNull final File file) throws IOException {
+    return wrap(new String(FileUtil.loadFileText(file, ENCODING)));
+  }
+
+  /**
+   * @return false if content is only kept as bytes and is never rendered as text
+   */
+  public boolean isText() {
+    return true;
+  }
+
+  @NotNull
+  public String wrap(@NotNull final String text) {
+    return myPrefix + text + mySuffix;
+  }
+
+  /**
+   * @return error message that is rendered instead of content that failed to load
+   */
+  @NotNull
+  public static String error(@NotNull final String message) {
+    return "ERROR: Content for StaticUIExtensions plugin was not found. " + message;
+  }
+
+  @NotNull
+  public static byte[] encode(@NotNull final String text) {
+    try {
+      return text.getBytes(ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(ENCODING + " is not supported", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ContentWrapper{" + myName + '}';
+  }
+}
@@ -26,6 +26,8 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ControllerPaths {
   private final String myResourcesControllerPath;
+  private final String myFragmentIncludePath;
+  private final String myAssetsPath;
   @NotNull
   private final Configuration myConfig;
 
@@ -33,6 +35,31 @@ public class ControllerPaths {
                          @NotNull final Configuration config) {
     myConfig = config;
     myResourcesControllerPath = descriptor.getPluginResourcesPath("resources.html");
+    myFragmentIncludePath = descriptor.getPluginResourcesPath("fragment.jsp");
+    myAssetsPath = descriptor.getPluginResourcesPath("asset.html");
+  }
+
+  /**
+   * Plugin resources paths that do not end with .html are served by TeamCity as static files,
+   * so the asset name is passed as a parameter
+   */
+  @NotNull
+  public String getAssetsControllerRegistrationBase() {
+    return myAssetsPath;
+  }
+
+  @NotNull
+  public String getAssetNameParameter() {
+    return "name";
+  }
+
+  /**
+   * @param name content addressed name of the asset
+   * @return path of the asset relative to the server context
+   */
+  @NotNull
+  public String getAssetPath(@NotNull final String name) {
+    return myAssetsPath + "?" + getAssetNameParameter() + "=" + name;
   }
 
   public String getResourceControllerRegistrationBase() {
@@ -63,6 +90,29 @@ public class ControllerPaths {
     return "showEmptyContent";
   }
 
+  @NotNull
+  public String getRuleParameter() {
+    return "rule";
+  }
+
+  @NotNull
+  public String getPlaceParameter() {
+    return "place";
+  }
+
+  /**
+   * @return page that writes the fragment passed in the extension model without calling the controller
+   */
+  @NotNull
+  public String getFragmentIncludePath() {
+    return myFragmentIncludePath;
+  }
+
+  @NotNull
+  public String getFragmentModelKey() {
+    return "staticUIExtensionsFragment";
+  }
+
   @NotNull
   public String getResourceControllerBasePath() {
     return getResourceControllerRegistrationBase() + "?" + getTokenParameter() + "=" + myConfig.getAccessToken();
@@ -83,6 +133,16 @@ public class ControllerPaths {
     return path + "&" + getIncludeJsFileParameter() + "=" + resource;
   }
 
+  @NotNull
+  public String addRuleToResourceControllerPath(@NotNull String path, @NotNull String ruleId) {
+    return path + "&" + getRuleParameter() + "=" + ruleId;
+  }
+
+  @NotNull
+  public String addPlaceToResourceControllerPath(@NotNull String path, @NotNull String placeKey) {
+    return path + "&" + getPlaceParameter() + "=" + placeKey;
+  }
+
   @NotNull
   public String addEmptyContentControllerPath(@NotNull String path) {
     return path + "&" + getEmptyContentParameter() + "=42";
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Strong entity tags computed from file content. A tag is computed once
+ * per file version, the version is defined by file size and modification time.
+ */
+public class ETagCache {
+  private static final int MAX_ENTRIES = 4096;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final ConcurrentMap<File, Entry> myEntries = new ConcurrentHashMap<File, Entry>();
+
+  /**
+   * @return quoted entity tag of the file content
+   */
+  @NotNull
+  public String getETag(@NotNull final File file) throws IOException {
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+
+    final Entry entry = myEntries.get(file);
+    if (entry != null && entry.myLength == length && entry.myLastModified == lastModified) {
+      return entry.myETag;
+    }
+
+    final String etag = '"' + hash(file) + '"';
+    if (myEntries.size() >= MAX_ENTRIES) {
+      myEntries.clear();
+    }
+    myEntries.put(file, new Entry(length, lastModified, etag));
+    return etag;
+  }
+
+  @NotNull
+  private static String hash(@NotNull final File file) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+
+    InputStream is = null;
+    try {
+      is = new FileInputStream(file);
+      final byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = is.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      FileUtil.close(is);
+    }
+
+    return toHex(digest.digest());
+  }
+
+  @NotNull
+  static String toHex(@NotNull final byte[] bytes) {
+    final char[] result = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      result[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      result[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(result);
+  }
+
+  private static class Entry {
+    private final long myLength;
+    private final long myLastModified;
+    private final String myETag;
+
+    private Entry(final long length, final long lastModified, @NotNull final String etag) {
+      myLength = length;
+      myLastModified = lastModified;
+      myETag = etag;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable set of page extensions published by {@link StaticContentManager}.
+ * Extensions that are registered in TeamCity but not included in the
+ * current snapshot are not shown.
+ */
+public class ExtensionsSnapshot {
+  public static final ExtensionsSnapshot EMPTY = new ExtensionsSnapshot(0, Collections.<SimplePageExtension>emptyList(), null, null);
+
+  private final long myVersion;
+  private final List<SimplePageExtension> myExtensions;
+  private final Set<SimplePageExtension> myActive;
+  private final RulesMatcher myMatcher;
+  private final RuleFragments myFragments;
+
+  public ExtensionsSnapshot(final long version,
+                            @NotNull final Collection<? extends SimplePageExtension> extensions,
+                            @Nullable final RulesMatcher matcher,
+                            @Nullable final RuleFragments fragments) {
+    myVersion = version;
+    myExtensions = Collections.unmodifiableList(new ArrayList<SimplePageExtension>(extensions));
+    myActive = Collections.newSetFromMap(new IdentityHashMap<SimplePageExtension, Boolean>());
+    myActive.addAll(extensions);
+    myMatcher = matcher;
+    myFragments = fragments;
+  }
+
+  public long getVersion() {
+    return myVersion;
+  }
+
+  @NotNull
+  public List<SimplePageExtension> getExtensions() {
+    return myExtensions;
+  }
+
+  public boolean isActive(@NotNull final SimplePageExtension extension) {
+    return myActive.contains(extension);
+  }
+
+  /**
+   * @return matcher for rules of all extensions of the snapshot
+   */
+  @Nullable
+  public RulesMatcher getMatcher() {
+    return myMatcher;
+  }
+
+  /**
+   * @return rendered content of rules of the snapshot
+   */
+  @Nullable
+  public RuleFragments getFragments() {
+    return myFragments;
+  }
+}
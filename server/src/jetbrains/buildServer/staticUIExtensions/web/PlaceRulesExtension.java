@@ -0,0 +1,152 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single extension for all rules of a page place.
+ * Rules matching the page are found with one lookup and passed to
+ * the content controller through a request attribute,
+ * or rendered into the extension model in direct mode.
+ */
+public class PlaceRulesExtension extends SimplePageExtension implements ReloadableExtension {
+  private static final String MATCHED_RULES_ATTRIBUTE = PlaceRulesExtension.class.getName() + ".rules.";
+
+  private final String myPlaceKey;
+  private final List<Rule> myRules;
+  private final RulesMatcher myMatcher;
+  private final ControllerPaths myPaths;
+  private final boolean myDirect;
+  private volatile StaticContentManager myManager;
+
+  public PlaceRulesExtension(@NotNull final PagePlaces pagePlaces,
+                             @NotNull final PluginDescriptor descriptor,
+                             @NotNull final ControllerPaths paths,
+                             @NotNull final PlaceId place,
+                             @NotNull final String placeKey,
+                             @NotNull final List<Rule> rules,
+                             @NotNull final RulesMatcher matcher,
+                             final boolean direct) {
+    super(pagePlaces);
+    myPlaceKey = placeKey;
+    myRules = Collections.unmodifiableList(new ArrayList<Rule>(rules));
+    myMatcher = matcher;
+    myPaths = paths;
+    myDirect = direct;
+
+    setPlaceId(place);
+    setPluginName(descriptor.getPluginName() + "_" + placeKey);
+    if (direct) {
+      setIncludeUrl(paths.getFragmentIncludePath());
+    } else {
+      setIncludeUrl(paths.addPlaceToResourceControllerPath(paths.getResourceControllerBasePath(), placeKey));
+    }
+  }
+
+  @NotNull
+  public List<Rule> getRules() {
+    return myRules;
+  }
+
+  @NotNull
+  public Object getContentKey() {
+    return Arrays.asList(getPlaceId(), getPluginName(), getIncludeUrl(), myRules);
+  }
+
+  public void setManager(@NotNull final StaticContentManager manager) {
+    myManager = manager;
+  }
+
+  @Override
+  public boolean isAvailable(@NotNull HttpServletRequest request) {
+    if (!super.isAvailable(request)) return false;
+
+    RulesMatcher matcher = myMatcher;
+    final StaticContentManager manager = myManager;
+    if (manager != null) {
+      final ExtensionsSnapshot snapshot = manager.getSnapshot(request);
+      if (!snapshot.isActive(this)) return false;
+      if (snapshot.getMatcher() != null) matcher = snapshot.getMatcher();
+    }
+
+    final RulesMatcher.Match match = RulePageExtension.getMatch(request, matcher);
+    if (match.isEmpty()) return false;
+
+    final List<String> ruleIds = new ArrayList<String>();
+    for (Rule rule : myRules) {
+      if (myDirect && !rule.getContent().isValid()) continue;
+      if (match.matches(rule.getRuleId())) {
+        ruleIds.add(rule.getRuleId());
+      }
+    }
+    if (ruleIds.isEmpty()) return false;
+
+    request.setAttribute(MATCHED_RULES_ATTRIBUTE + myPlaceKey, ruleIds);
+    return true;
+  }
+
+  @Override
+  public void fillModel(@NotNull Map<String, Object> model, @NotNull HttpServletRequest request) {
+    super.fillModel(model, request);
+    final StaticContentManager manager = myManager;
+    if (!myDirect || manager == null) return;
+
+    final RuleFragments fragments = manager.getSnapshot(request).getFragments();
+    if (fragments == null) return;
+
+    final List<String> ruleIds = getMatchedRules(request, myPlaceKey);
+    if (ruleIds == null) return;
+
+    final StringBuilder sb = new StringBuilder();
+    final RuleFragments.Fragment bundle = fragments.takeBundle(request);
+    if (bundle != null) {
+      sb.append(bundle.getText());
+    }
+    for (String ruleId : ruleIds) {
+      final String fragment = fragments.getFragmentText(ruleId);
+      if (fragment != null) {
+        sb.append(fragment);
+      }
+    }
+    model.put(myPaths.getFragmentModelKey(), sb.toString());
+  }
+
+  /**
+   * @return ids of rules of the place that matched the page being rendered,
+   *         or null if the place extension was not checked for the request
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public static List<String> getMatchedRules(@NotNull HttpServletRequest request, @NotNull String placeKey) {
+    return (List<String>) request.getAttribute(MATCHED_RULES_ATTRIBUTE + placeKey);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Page extension that may stay registered when configuration is reloaded
+ * and its content was not changed
+ */
+public interface ReloadableExtension {
+  /**
+   * @return value that is equal for extensions rendering the same content at the same place
+   */
+  @NotNull
+  Object getContentKey();
+
+  /**
+   * Called before the extension is registered. The extension must be shown only
+   * while it is included in the current snapshot of the manager
+   */
+  void setManager(@NotNull StaticContentManager manager);
+}
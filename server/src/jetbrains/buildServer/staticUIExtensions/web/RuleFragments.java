@@ -0,0 +1,337 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.staticUIExtensions.Configuration;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered content of rules of one configuration. Rule ids are positional, so fragments
+ * are published together with extensions in {@link ExtensionsSnapshot} and
+ * a page never renders content of another configuration.
+ * <p/>
+ * Instances are created by {@link RuleFragmentsCache}, which drops rendered content
+ * when included files change.
+ */
+public class RuleFragments {
+  private static final Logger LOG = Logger.getInstance(RuleFragments.class.getName());
+
+  private static final String BUNDLE_ATTRIBUTE = RuleFragments.class.getName() + ".bundle";
+  private static final int MAX_BUNDLES = 256;
+
+  private final Configuration myConfig;
+  private final StaticContentCache myCache;
+  private final StaticAssets myAssets;
+  private final Map<String, Rule> myRules;
+  private final boolean myEager;
+  private final boolean myBundle;
+  private final ConcurrentMap<String, Fragment> myFragments = new ConcurrentHashMap<String, Fragment>();
+  private final ConcurrentMap<List<String>, Fragment> myBundles = new ConcurrentHashMap<List<String>, Fragment>();
+  private final Set<List<String>> myBundleAssets = new HashSet<List<String>>();
+  private final AtomicLong myGeneration = new AtomicLong();
+  private volatile Map<String, Fragment> myMaterialized = null;
+
+  RuleFragments(@NotNull final Configuration config,
+                @NotNull final StaticContentCache cache,
+                @NotNull final StaticAssets assets,
+                @NotNull final Collection<Rule> rules,
+                final boolean eager,
+                final boolean bundle) {
+    myConfig = config;
+    myCache = cache;
+    myAssets = assets;
+    myEager = eager;
+    myBundle = bundle;
+
+    final Map<String, Rule> map = new HashMap<String, Rule>();
+    for (Rule rule : rules) {
+      map.put(rule.getRuleId(), rule);
+    }
+    myRules = Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * @return all files referenced by rules
+   */
+  @NotNull
+  Collection<File> getIncludeFiles() {
+    final Collection<File> files = new HashSet<File>();
+    for (Rule rule : myRules.values()) {
+      final StaticContent content = rule.getContent();
+      for (String path : new String[]{content.getCSS(), content.getJS(), content.getHTML()}) {
+        if (path == null) continue;
+        final File file = myConfig.mapIncludeFilePath(path);
+        if (file != null) {
+          files.add(file);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Drops rendered content, in eager mode all fragments are rendered again
+   */
+  void contentChanged() {
+    if (myEager) {
+      materialize();
+    } else {
+      invalidate();
+    }
+  }
+
+  /**
+   * Drops assets of bundles, called when the configuration is no longer published
+   */
+  void dispose() {
+    synchronized (myBundleAssets) {
+      releaseBundleAssets();
+    }
+  }
+
+  /**
+   * Renders fragments of all rules. Failed includes are reported here
+   * and not on page views
+   */
+  private synchronized void materialize() {
+    final Map<String, Fragment> fragments = new HashMap<String, Fragment>();
+    for (Rule rule : myRules.values()) {
+      final Fragment fragment = render(rule.getContent());
+      if (!fragment.isComplete()) {
+        LOG.warn("Failed to prepare content for StaticUIExtensions rule " + rule);
+      }
+      fragments.put(rule.getRuleId(), fragment);
+    }
+    myMaterialized = Collections.unmodifiableMap(fragments);
+    invalidate();
+  }
+
+  /**
+   * @return rendered content of the rule or null if there is no such rule
+   */
+  @Nullable
+  public Fragment getFragment(@NotNull final String ruleId) {
+    final Map<String, Fragment> materialized = myMaterialized;
+    if (materialized != null) return materialized.get(ruleId);
+
+    final Rule rule = myRules.get(ruleId);
+    if (rule == null) return null;
+
+    final Fragment cached = myFragments.get(ruleId);
+    if (cached != null) return cached;
+
+    final long generation = myGeneration.get();
+    final Fragment fragment = render(rule.getContent());
+    if (fragment.isComplete() && generation == myGeneration.get()) {
+      myFragments.putIfAbsent(ruleId, fragment);
+    }
+    return fragment;
+  }
+
+  /**
+   * @return rendered content of the rule as text or null if there is no such rule
+   */
+  @Nullable
+  public String getFragmentText(@NotNull final String ruleId) {
+    final Fragment fragment = getFragment(ruleId);
+    return fragment == null ? null : fragment.getText();
+  }
+
+  /**
+   * @return bundle of rules matching the page if it was not yet written for the page, otherwise null
+   */
+  @Nullable
+  public Fragment takeBundle(@NotNull final HttpServletRequest request) {
+    if (!myBundle || request.getAttribute(BUNDLE_ATTRIBUTE) != null) return null;
+
+    final RulesMatcher.Match match = RulePageExtension.getMatch(request);
+    if (match == null) return null;
+
+    request.setAttribute(BUNDLE_ATTRIBUTE, Boolean.TRUE);
+    return getBundle(match.getRuleIds());
+  }
+
+  /**
+   * @return CSS and JS of given rules combined into a single style and a single script
+   */
+  @NotNull
+  public Fragment getBundle(@NotNull final List<String> ruleIds) {
+    final Fragment cached = myBundles.get(ruleIds);
+    if (cached != null) return cached;
+
+    final long generation = myGeneration.get();
+    final StringBuilder css = new StringBuilder();
+    final StringBuilder js = new StringBuilder();
+    boolean complete = true;
+    for (String ruleId : ruleIds) {
+      final Rule rule = myRules.get(ruleId);
+      if (rule == null) continue;
+      complete &= appendFile(css, rule.getContent().getCSS());
+      complete &= appendFile(js, rule.getContent().getJS());
+    }
+
+    synchronized (myBundleAssets) {
+      if (myBundleAssets.size() >= MAX_BUNDLES && !myBundleAssets.contains(ruleIds)) {
+        myBundles.clear();
+        releaseBundleAssets();
+      }
+      myBundleAssets.add(ruleIds);
+
+      final StringBuilder sb = new StringBuilder();
+      if (css.length() > 0) {
+        sb.append(myAssets.wrapCss(getAssetKey(ruleIds), css.toString()));
+      }
+      if (js.length() > 0) {
+        sb.append(myAssets.wrapJs(getAssetKey(ruleIds), js.toString()));
+      }
+
+      final Fragment bundle = new Fragment(sb.toString(), complete);
+      if (complete && generation == myGeneration.get()) {
+        myBundles.putIfAbsent(ruleIds, bundle);
+      }
+      return bundle;
+    }
+  }
+
+  /**
+   * Bundles of other configurations may have the same rule ids but a different content
+   */
+  @NotNull
+  private Object getAssetKey(@NotNull final List<String> ruleIds) {
+    return Arrays.asList(this, ruleIds);
+  }
+
+  private void releaseBundleAssets() {
+    for (List<String> ruleIds : myBundleAssets) {
+      myAssets.release(getAssetKey(ruleIds));
+    }
+    myBundleAssets.clear();
+  }
+
+  /**
+   * Appends content of the file to a bundle. Errors are not written into
+   * the bundle as they would break the whole style or script
+   */
+  private boolean appendFile(@NotNull final StringBuilder sb, @Nullable final String file) {
+    if (file == null) return true;
+
+    final File includeFile = myConfig.mapIncludeFilePath(file);
+    if (includeFile == null) {
+      LOG.warn("Failed to open file to include: " + file + ".");
+      return false;
+    }
+
+    try {
+      sb.append(myCache.getText(includeFile, ContentWrapper.HTML)).append('\n');
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to open file to include: " + includeFile + ", error: " + e.toString());
+      return false;
+    }
+  }
+
+  private void invalidate() {
+    myGeneration.incrementAndGet();
+    myFragments.clear();
+    myBundles.clear();
+  }
+
+  @NotNull
+  private Fragment render(@NotNull final StaticContent content) {
+    final StringBuilder sb = new StringBuilder();
+    boolean complete = true;
+    if (!myBundle) {
+      complete &= renderFile(sb, content.getCSS(), myAssets.getCssWrapper());
+      complete &= renderFile(sb, content.getJS(), myAssets.getJsWrapper());
+    }
+    complete &= renderFile(sb, content.getHTML(), ContentWrapper.HTML);
+    return new Fragment(sb.toString(), complete);
+  }
+
+  private boolean renderFile(@NotNull final StringBuilder sb,
+                             @Nullable final String file,
+                             @NotNull final ContentWrapper wrapper) {
+    if (file == null) return true;
+
+    final File includeFile = myConfig.mapIncludeFilePath(file);
+    if (includeFile == null) {
+      LOG.warn("Failed to open file to include: " + file + ".");
+      sb.append(ContentWrapper.error("Path not found: " + file));
+      return false;
+    }
+
+    try {
+      sb.append(myCache.getText(includeFile, wrapper));
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to open file to include: " + includeFile + ", error: " + e.toString());
+      sb.append(ContentWrapper.error("Failed to open file: " + includeFile.getName()));
+      return false;
+    }
+  }
+
+  /**
+   * Rendered content kept as text, which pages render directly.
+   * Responses of the content controller that are not includes encode it on demand
+   */
+  public static class Fragment {
+    private final String myText;
+    private final boolean myComplete;
+
+    private Fragment(@NotNull final String text, final boolean complete) {
+      myText = text;
+      myComplete = complete;
+    }
+
+    /**
+     * @return content encoded with {@link ContentWrapper#ENCODING}
+     */
+    @NotNull
+    public byte[] getData() {
+      return ContentWrapper.encode(myText);
+    }
+
+    @NotNull
+    public String getText() {
+      return myText;
+    }
+
+    public boolean isComplete() {
+      return myComplete;
+    }
+  }
+}
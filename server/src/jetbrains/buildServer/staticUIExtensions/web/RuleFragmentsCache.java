@@ -0,0 +1,112 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.configuration.ChangeListener;
+import jetbrains.buildServer.staticUIExtensions.Configuration;
+import jetbrains.buildServer.staticUIExtensions.SettingsChangeListener;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps CSS, JS and HTML content of a rule rendered into a single buffer,
+ * so a rule is included with one request by its id.
+ * Fragments are dropped as soon as any included file changes.
+ * <p/>
+ * In eager mode all fragments are rendered when rules are updated and
+ * re-rendered on any change of included files, so requests never read files.
+ * <p/>
+ * CSS and JS are either inlined or linked, see {@link StaticAssets}.
+ * In bundle mode fragments contain only HTML, CSS and JS of all rules matching a page
+ * are combined into a bundle that is written once per page before the first fragment.
+ * <p/>
+ * Fragments of each configuration are kept in {@link RuleFragments} which are
+ * published with extensions, this class creates them and tracks changes of included files.
+ */
+public class RuleFragmentsCache implements SettingsChangeListener {
+  public static final String EAGER_PARAM = "render.eager";
+  public static final String BUNDLE_PARAM = "render.bundle";
+
+  private final Configuration myConfig;
+  private final StaticContentCache myCache;
+  private final StaticAssets myAssets;
+  private final Collection<RuleFragments> myLive = new CopyOnWriteArrayList<RuleFragments>();
+  private volatile boolean myEager;
+  private volatile boolean myBundle;
+
+  public RuleFragmentsCache(@NotNull final Configuration config,
+                            @NotNull final StaticContentCache cache,
+                            @NotNull final StaticAssets assets) {
+    myConfig = config;
+    myCache = cache;
+    myAssets = assets;
+    final ChangeListener listener = new ChangeListener() {
+      public void changeOccured(String requestor) {
+        for (RuleFragments fragments : myLive) {
+          fragments.contentChanged();
+        }
+      }
+    };
+    cache.addChangeListener(listener);
+    assets.addChangeListener(listener);
+  }
+
+  public void settingsChanged(@NotNull final Settings settings) {
+    myEager = settings.getBoolean(EAGER_PARAM, false);
+    myBundle = settings.getBoolean(BUNDLE_PARAM, false);
+  }
+
+  /**
+   * @return fragments of given rules, they are kept up to date until {@link #release(RuleFragments)} is called
+   */
+  @NotNull
+  public RuleFragments createFragments(@NotNull final Collection<Rule> rules) {
+    final RuleFragments fragments = new RuleFragments(myConfig, myCache, myAssets, rules, myEager, myBundle);
+    myLive.add(fragments);
+    updateReferencedFiles();
+    fragments.contentChanged();
+    return fragments;
+  }
+
+  /**
+   * Stops tracking changes for fragments of a configuration which is no longer published
+   * and drops assets of its bundles
+   */
+  public void release(@NotNull final RuleFragments fragments) {
+    myLive.remove(fragments);
+    updateReferencedFiles();
+    fragments.dispose();
+  }
+
+  /**
+   * Fragments and bundles outlive entries of the content cache, so all files
+   * referenced by rules are watched even if they were evicted or are too large to be cached
+   */
+  private synchronized void updateReferencedFiles() {
+    final Collection<File> files = new HashSet<File>();
+    for (RuleFragments fragments : myLive) {
+      files.addAll(fragments.getIncludeFiles());
+    }
+    myCache.setReferencedFiles(files);
+  }
+}
@@ -17,29 +17,50 @@
 package jetbrains.buildServer.staticUIExtensions.web;
 
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
 import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
 import jetbrains.buildServer.web.openapi.PagePlaces;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import jetbrains.buildServer.web.openapi.SimplePageExtension;
 import jetbrains.buildServer.web.util.WebUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 19:44
  */
-public class RulePageExtension extends SimplePageExtension {
+public class RulePageExtension extends SimplePageExtension implements ReloadableExtension {
+  private static final String MATCH_ATTRIBUTE = RulePageExtension.class.getName() + ".match";
+  private static final String PATH_ATTRIBUTE = RulePageExtension.class.getName() + ".path";
+
   @NotNull
   private final Rule myRule;
-
+  @NotNull
+  private final ControllerPaths myPaths;
+  private final boolean myDirect;
+  @Nullable
+  private volatile StaticContentManager myManager;
+
+  /**
+   * @param combined if true, all content of the rule is included with a single request by rule id
+   * @param direct if true, the rendered content of the rule is passed to the page
+   *               through the extension model instead of being requested from the controller
+   */
   public RulePageExtension(@NotNull final PagePlaces pagePlaces,
                            @NotNull final PluginDescriptor descriptor,
                            @NotNull final ControllerPaths paths,
-                           @NotNull final Rule rule) {
+                           @NotNull final Rule rule,
+                           final boolean combined,
+                           final boolean direct) {
     super(pagePlaces);
     myRule = rule;
+    myPaths = paths;
+    myDirect = direct;
 
     setPlaceId(rule.getPlace());
     setPluginName(descriptor.getPluginName() + rule.getRuleId());
@@ -47,8 +68,18 @@ public class RulePageExtension extends SimplePageExtension {
 
     final StaticContent content = rule.getContent();
 
+    if (direct) {
+      setIncludeUrl(paths.getFragmentIncludePath());
+      return;
+    }
+
     String includeUrl = paths.getResourceControllerBasePath();
 
+    if (combined && content.isValid()) {
+      setIncludeUrl(paths.addRuleToResourceControllerPath(includeUrl, rule.getRuleId()));
+      return;
+    }
+
     final String html = content.getHTML();
     if (html != null) {
       includeUrl = paths.addHtmlToResourceControllerPath(includeUrl, html);
@@ -73,8 +104,88 @@ public class RulePageExtension extends SimplePageExtension {
 
   @Override
   public boolean isAvailable(@NotNull HttpServletRequest request) {
+    // there is nothing to include, so the page does not need to call the extension at all
+    if (myDirect && !myRule.getContent().isValid()) return false;
     if (!super.isAvailable(request)) return false;
 
+    RulesMatcher rulesMatcher = null;
+    final StaticContentManager manager = myManager;
+    if (manager != null) {
+      final ExtensionsSnapshot snapshot = manager.getSnapshot(request);
+      if (!snapshot.isActive(this)) return false;
+      if (snapshot.getMatcher() != null) rulesMatcher = snapshot.getMatcher();
+    }
+
+    if (rulesMatcher == null) {
+      return myRule.getUrlMatcher().matches(getPathToMatch(request));
+    }
+
+    return getMatch(request, rulesMatcher).matches(myRule.getRuleId());
+  }
+
+  @Override
+  public void fillModel(@NotNull Map<String, Object> model, @NotNull HttpServletRequest request) {
+    super.fillModel(model, request);
+    final StaticContentManager manager = myManager;
+    if (!myDirect || manager == null) return;
+
+    // fragments are taken from the snapshot the extension was shown from, rule ids differ between configurations
+    final RuleFragments fragments = manager.getSnapshot(request).getFragments();
+    if (fragments == null) return;
+
+    final String fragment = fragments.getFragmentText(myRule.getRuleId());
+    final RuleFragments.Fragment bundle = fragments.takeBundle(request);
+    final String text = fragment != null ? fragment : "";
+    model.put(myPaths.getFragmentModelKey(), bundle != null ? bundle.getText() + text : text);
+  }
+
+  /**
+   * @return rules matched for the page being rendered, or null if no extension has matched the request yet
+   */
+  @Nullable
+  public static RulesMatcher.Match getMatch(@NotNull HttpServletRequest request) {
+    final Object match = request.getAttribute(MATCH_ATTRIBUTE);
+    return match instanceof RulesMatcher.Match ? (RulesMatcher.Match) match : null;
+  }
+
+  /**
+   * @return rules matched for the request. Result is computed once per request and matcher
+   */
+  @NotNull
+  public static RulesMatcher.Match getMatch(@NotNull HttpServletRequest request, @NotNull RulesMatcher rulesMatcher) {
+    final Object match = request.getAttribute(MATCH_ATTRIBUTE);
+    if (match instanceof RulesMatcher.Match && ((RulesMatcher.Match) match).getRulesMatcher() == rulesMatcher) {
+      return (RulesMatcher.Match) match;
+    }
+
+    final RulesMatcher.Match result = rulesMatcher.match(getPathToMatch(request));
+    request.setAttribute(MATCH_ATTRIBUTE, result);
+    return result;
+  }
+
+  @NotNull
+  public Object getContentKey() {
+    return Arrays.asList(getPlaceId(), getPluginName(), getIncludeUrl(), myRule);
+  }
+
+  public void setManager(@NotNull final StaticContentManager manager) {
+    myManager = manager;
+  }
+
+  /**
+   * Normalized path is computed once and shared by all extensions through request attribute.
+   * It is recomputed only if the request was dispatched to another url
+   */
+  @NotNull
+  public static String getPathToMatch(@NotNull HttpServletRequest request) {
+    final String uri = request.getRequestURI();
+    final String query = request.getQueryString();
+
+    final Object cached = request.getAttribute(PATH_ATTRIBUTE);
+    if (cached instanceof MatchPath && ((MatchPath) cached).isFor(uri, query)) {
+      return ((MatchPath) cached).getPath();
+    }
+
     // consider using WebUtil.getOriginalRequestUrl since 8.1
 
     //TeamCity 8.0 compatible version:
@@ -86,7 +197,8 @@ public class RulePageExtension extends SimplePageExtension {
     if (pathToMatch.startsWith("/"))
       pathToMatch = pathToMatch.substring(1);
 
-    return myRule.getUrlMatcher().matches(pathToMatch);
+    request.setAttribute(PATH_ATTRIBUTE, new MatchPath(uri, query, pathToMatch));
+    return pathToMatch;
   }
 
   @NotNull
@@ -99,4 +211,29 @@ public class RulePageExtension extends SimplePageExtension {
     return url.toString();
   }
 
+  private static class MatchPath {
+    private final String myUri;
+    private final String myQuery;
+    private final String myPath;
+
+    private MatchPath(@Nullable final String uri, @Nullable final String query, @NotNull final String path) {
+      myUri = uri;
+      myQuery = query;
+      myPath = path;
+    }
+
+    public boolean isFor(@Nullable final String uri, @Nullable final String query) {
+      return same(myUri, uri) && same(myQuery, query);
+    }
+
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    private static boolean same(@Nullable final String a, @Nullable final String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+
 }
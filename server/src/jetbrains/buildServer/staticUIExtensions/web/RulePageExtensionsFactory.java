@@ -16,19 +16,34 @@
 
 package jetbrains.buildServer.staticUIExtensions.web;
 
+import jetbrains.buildServer.staticUIExtensions.SettingsChangeListener;
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PlaceId;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.*;
+
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 19:58
  */
-public class RulePageExtensionsFactory {
+public class RulePageExtensionsFactory implements SettingsChangeListener {
+  public static final String COMBINED_PARAM = "render.combined";
+  public static final String DISPATCH_PARAM = "render.dispatch";
+  public static final String DISPATCH_PLACE = "place";
+  public static final String INCLUDE_PARAM = "render.include";
+  public static final String INCLUDE_DIRECT = "direct";
+
   private final PagePlaces myPlaces;
   private final PluginDescriptor myDescription;
   private final ControllerPaths myPaths;
+  private volatile boolean myCombined;
+  private volatile boolean myPlaceDispatch;
+  private volatile boolean myDirectInclude;
 
   public RulePageExtensionsFactory(@NotNull final PagePlaces places,
                                    @NotNull final PluginDescriptor description,
@@ -40,6 +55,42 @@ public class RulePageExtensionsFactory {
 
   @NotNull
   public RulePageExtension createExtension(@NotNull final Rule rule) {
-    return new RulePageExtension(myPlaces, myDescription, myPaths, rule);
+    return new RulePageExtension(myPlaces, myDescription, myPaths, rule, myCombined, myDirectInclude);
+  }
+
+  /**
+   * @return one extension per page place that includes content of all rules of the place
+   */
+  @NotNull
+  public List<PlaceRulesExtension> createPlaceExtensions(@NotNull final Collection<Rule> rules,
+                                                         @NotNull final RulesMatcher matcher) {
+    final Map<PlaceId, List<Rule>> places = new LinkedHashMap<PlaceId, List<Rule>>();
+    for (Rule rule : rules) {
+      List<Rule> placeRules = places.get(rule.getPlace());
+      if (placeRules == null) {
+        placeRules = new ArrayList<Rule>();
+        places.put(rule.getPlace(), placeRules);
+      }
+      placeRules.add(rule);
+    }
+
+    final List<PlaceRulesExtension> result = new ArrayList<PlaceRulesExtension>();
+    for (Map.Entry<PlaceId, List<Rule>> e : places.entrySet()) {
+      final String placeKey = "p" + result.size();
+      result.add(new PlaceRulesExtension(myPlaces, myDescription, myPaths, e.getKey(), placeKey, e.getValue(), matcher, myDirectInclude));
+    }
+    return result;
+  }
+
+  public boolean isPlaceDispatch() {
+    return myPlaceDispatch;
+  }
+
+  public void settingsChanged(@NotNull final Settings settings) {
+    myCombined = settings.getBoolean(COMBINED_PARAM, false)
+            || settings.getBoolean(RuleFragmentsCache.EAGER_PARAM, false)
+            || settings.getBoolean(RuleFragmentsCache.BUNDLE_PARAM, false);
+    myPlaceDispatch = DISPATCH_PLACE.equals(settings.getString(DISPATCH_PARAM));
+    myDirectInclude = INCLUDE_DIRECT.equals(settings.getString(INCLUDE_PARAM));
   }
 }
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.configuration.ChangeListener;
+import jetbrains.buildServer.staticUIExtensions.SettingsChangeListener;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.context.ServletContextAware;
+
+import javax.servlet.ServletContext;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Included CSS and JS files that are linked from pages instead of being inlined.
+ * <p/>
+ * An asset is named by the hash of its content, so it can be cached by browsers forever.
+ * Link tags are produced by content wrappers, so they are kept in {@link StaticContentCache}
+ * and a changed file gets a new name as soon as the cache drops the old tag.
+ * <p/>
+ * Different keys may produce the same content, so an asset is kept while at least one key refers to it.
+ * <p/>
+ * Assets are kept in memory as long as they are referenced, so they count against the limits of
+ * the content cache ("cache.max-entries" and "cache.max-size"). Content that does not fit is inlined,
+ * a link that was already rendered is never broken by eviction.
+ */
+public class StaticAssets implements SettingsChangeListener, ServletContextAware {
+  private static final Logger LOG = Logger.getInstance(StaticAssets.class.getName());
+
+  public static final String ASSETS_PARAM = "render.assets";
+  public static final String ASSETS_LINK = "link";
+  private static final String CSS = "css";
+  private static final String JS = "js";
+
+  private final ControllerPaths myPaths;
+  private final ConcurrentMap<String, Asset> myAssets = new ConcurrentHashMap<String, Asset>();
+  private final Map<List<Object>, String> myNames = new HashMap<List<Object>, String>();
+  private final Map<String, Integer> myUsages = new HashMap<String, Integer>();
+  private long myTotalSize;
+  private final Collection<ChangeListener> myListeners = new CopyOnWriteArrayList<ChangeListener>();
+  private volatile boolean myLink;
+  private volatile String myContextPath = "";
+  private volatile ContentWrapper myCssLink;
+  private volatile ContentWrapper myJsLink;
+  private volatile int myMaxEntries = StaticContentCache.DEFAULT_MAX_ENTRIES;
+  private volatile long myMaxSize = StaticContentCache.DEFAULT_MAX_SIZE;
+
+  public StaticAssets(@NotNull final ControllerPaths paths,
+                      @NotNull final StaticContentCache cache) {
+    myPaths = paths;
+    createWrappers();
+    cache.addChangeListener(new ChangeListener() {
+      public void changeOccured(String requestor) {
+        releaseDeletedFiles();
+      }
+    });
+  }
+
+  public void settingsChanged(@NotNull final Settings settings) {
+    myMaxEntries = Math.max(0, settings.getInt(StaticContentCache.MAX_ENTRIES_PARAM, StaticContentCache.DEFAULT_MAX_ENTRIES));
+    myMaxSize = Math.max(0, settings.getLong(StaticContentCache.MAX_SIZE_PARAM, StaticContentCache.DEFAULT_MAX_SIZE));
+
+    final boolean link = ASSETS_LINK.equals(settings.getString(ASSETS_PARAM));
+    if (link == myLink) return;
+    if (!link) {
+      synchronized (myNames) {
+        myNames.clear();
+        myUsages.clear();
+        myAssets.clear();
+        myTotalSize = 0;
+      }
+    }
+    // link tags cached for the previous wrappers may name the dropped assets,
+    // new wrappers are different cache keys, so those tags are never served again
+    createWrappers();
+    myLink = link;
+    fireChanged();
+  }
+
+  /**
+   * Registers a listener that is notified when already rendered links become outdated
+   */
+  public void addChangeListener(@NotNull final ChangeListener listener) {
+    myListeners.add(listener);
+  }
+
+  /**
+   * Links are rendered with the server context path, it is taken once when the plugin is loaded
+   */
+  public void setServletContext(@NotNull final ServletContext servletContext) {
+    myContextPath = servletContext.getContextPath();
+    createWrappers();
+    fireChanged();
+  }
+
+  @NotNull
+  public ContentWrapper getCssWrapper() {
+    return myLink ? myCssLink : ContentWrapper.CSS;
+  }
+
+  @NotNull
+  public ContentWrapper getJsWrapper() {
+    return myLink ? myJsLink : ContentWrapper.JS;
+  }
+
+  /**
+   * Wraps CSS that is not read from a single file, e.g. a bundle of several files
+   *
+   * @param key identifies the content, an asset registered before with the same key is dropped
+   */
+  @NotNull
+  public String wrapCss(@NotNull final Object key, @NotNull final String text) {
+    final ContentWrapper wrapper = getCssWrapper();
+    return wrapper instanceof LinkWrapper ? ((LinkWrapper) wrapper).wrapText(key, text) : wrapper.wrap(text);
+  }
+
+  /**
+   * Wraps JS that is not read from a single file, see {@link #wrapCss}
+   */
+  @NotNull
+  public String wrapJs(@NotNull final Object key, @NotNull final String text) {
+    final ContentWrapper wrapper = getJsWrapper();
+    return wrapper instanceof LinkWrapper ? ((LinkWrapper) wrapper).wrapText(key, text) : wrapper.wrap(text);
+  }
+
+  /**
+   * Drops assets registered with the key by {@link #wrapCss} or {@link #wrapJs},
+   * assets that have the same content but a different key are kept
+   */
+  public void release(@NotNull final Object key) {
+    synchronized (myNames) {
+      for (String extension : new String[]{CSS, JS}) {
+        final String name = myNames.remove(Arrays.<Object>asList(key, extension));
+        if (name != null) {
+          unuse(name);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param name name of the asset from the link
+   * @return asset or null if there is no such asset
+   */
+  @Nullable
+  public Asset getAsset(@NotNull final String name) {
+    return myAssets.get(name);
+  }
+
+  private void fireChanged() {
+    for (ChangeListener listener : myListeners) {
+      listener.changeOccured(StaticAssets.class.getName());
+    }
+  }
+
+  private void createWrappers() {
+    final String contextPath = myContextPath;
+    myCssLink = new LinkWrapper("css-link", "\n<link rel=\"stylesheet\" type=\"text/css\" href=\"", "\"/>\n", contextPath, CSS, "text/css; charset=" + ContentWrapper.ENCODING, ContentWrapper.CSS);
+    myJsLink = new LinkWrapper("js-link", "\n<script type=\"text/javascript\" src=\"", "\"></script>\n", contextPath, JS, "application/javascript; charset=" + ContentWrapper.ENCODING, ContentWrapper.JS);
+  }
+
+  /**
+   * @return name of the asset or null if the content does not fit into the limits
+   */
+  @Nullable
+  private String register(@NotNull final Object key, @NotNull final byte[] data, @NotNull final String extension, @NotNull final String contentType) {
+    final String hash = hash(data);
+    final String name = hash + "." + extension;
+    final List<Object> nameKey = Arrays.<Object>asList(key, extension);
+    synchronized (myNames) {
+      final String old = myNames.get(nameKey);
+      if (name.equals(old)) return name;
+
+      // the key is rendered again, so its previous asset is no longer referenced from it
+      if (old != null) {
+        myNames.remove(nameKey);
+        unuse(old);
+      }
+
+      final Integer usages = myUsages.get(name);
+      if (usages == null) {
+        if (myAssets.size() >= myMaxEntries || myTotalSize + data.length > myMaxSize) {
+          LOG.debug("Asset " + name + " does not fit into cache limits and will be inlined");
+          return null;
+        }
+        myAssets.put(name, new Asset(data, hash, contentType));
+        myTotalSize += data.length;
+      }
+      myUsages.put(name, usages == null ? 1 : usages + 1);
+      myNames.put(nameKey, name);
+    }
+    return name;
+  }
+
+  private void unuse(@NotNull final String name) {
+    final Integer usages = myUsages.get(name);
+    if (usages == null || usages <= 1) {
+      myUsages.remove(name);
+      final Asset asset = myAssets.remove(name);
+      if (asset != null) {
+        myTotalSize -= asset.getData().length;
+      }
+    } else {
+      myUsages.put(name, usages - 1);
+    }
+  }
+
+  /**
+   * Links of deleted files are never rendered again, so their names are not replaced by new ones
+   */
+  private void releaseDeletedFiles() {
+    synchronized (myNames) {
+      for (Iterator<Map.Entry<List<Object>, String>> it = myNames.entrySet().iterator(); it.hasNext(); ) {
+        final Map.Entry<List<Object>, String> e = it.next();
+        final Object key = e.getKey().get(0);
+        if (key instanceof File && !((File) key).isFile()) {
+          it.remove();
+          unuse(e.getValue());
+        }
+      }
+    }
+  }
+
+  @NotNull
+  private static String hash(@NotNull final byte[] data) {
+    try {
+      return ETagCache.toHex(MessageDigest.getInstance("SHA-1").digest(data));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+
+  private class LinkWrapper extends ContentWrapper {
+    private final String myContextPath;
+    private final String myExtension;
+    private final String myContentType;
+    private final ContentWrapper myInline;
+
+    private LinkWrapper(@NotNull final String name,
+                        @NotNull final String prefix,
+                        @NotNull final String suffix,
+                        @NotNull final String contextPath,
+                        @NotNull final String extension,
+                        @NotNull final String contentType,
+                        @NotNull final ContentWrapper inline) {
+      super(name, prefix, suffix);
+      myContextPath = contextPath;
+      myExtension = extension;
+      myContentType = contentType;
+      myInline = inline;
+    }
+
+    @NotNull
+    @Override
+    public String readText(@NotNull final File file) throws IOException {
+      final byte[] data = ContentWrapper.RAW.read(file);
+      final String name = register(file, data, myExtension, myContentType);
+      return name != null ? link(name) : myInline.wrap(new String(data, ContentWrapper.ENCODING));
+    }
+
+    @NotNull
+    private String wrapText(@NotNull final Object key, @NotNull final String text) {
+      final String name = register(key, ContentWrapper.encode(text), myExtension, myContentType);
+      return name != null ? link(name) : myInline.wrap(text);
+    }
+
+    @NotNull
+    private String link(@NotNull final String name) {
+      return wrap(myContextPath + myPaths.getAssetPath(name));
+    }
+  }
+
+  public static class Asset {
+    private final byte[] myData;
+    private final String myContentType;
+    private final String myETag;
+
+    private Asset(@NotNull final byte[] data, @NotNull final String hash, @NotNull final String contentType) {
+      myData = data;
+      myContentType = contentType;
+      myETag = '"' + hash + '"';
+    }
+
+    /**
+     * @return content of the asset, the array must not be modified
+     */
+    @NotNull
+    public byte[] getData() {
+      return myData;
+    }
+
+    @NotNull
+    public String getContentType() {
+      return myContentType;
+    }
+
+    @NotNull
+    public String getETag() {
+      return myETag;
+    }
+  }
+}
@@ -19,64 +19,349 @@ package jetbrains.buildServer.staticUIExtensions.web;
 import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.configuration.ChangeListener;
 import jetbrains.buildServer.configuration.FilesWatcher;
+import jetbrains.buildServer.staticUIExtensions.SettingsChangeListener;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import jetbrains.buildServer.util.CollectionsUtil;
-import jetbrains.buildServer.util.FileUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Cache hits are lock-free, an entry only records the time it was used.
+ * Changes of the cache are made under a lock, when the cache exceeds configured limits
+ * the least recently used entries are evicted on the miss path.
+ *
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 17.11.11 12:29
  */
-public class StaticContentCache {
+public class StaticContentCache implements SettingsChangeListener {
   private static final Logger LOG = Logger.getInstance(StaticContentCache.class.getName());
 
+  public static final String MAX_ENTRIES_PARAM = "cache.max-entries";
+  public static final String MAX_SIZE_PARAM = "cache.max-size";
+  public static final String CHECK_INTERVAL_PARAM = "cache.check-interval";
+  public static final String ERROR_TTL_PARAM = "cache.error-ttl";
+  static final int DEFAULT_MAX_ENTRIES = 1024;
+  static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+  private static final int DEFAULT_CHECK_INTERVAL = 5000;
+  private static final long DEFAULT_ERROR_TTL = 10000;
+
   private final FilesWatcher myWatcher;
-  private final Map<File, Entry> myCache = new ConcurrentHashMap<File, Entry>();
+  private final ConcurrentMap<Key, Entry> myCache = new ConcurrentHashMap<Key, Entry>();
+  private final Object myLock = new Object();
+  private final Map<File, Set<Key>> myFileKeys = new HashMap<File, Set<Key>>();
+  private Set<File> myReferencedFiles = Collections.emptySet();
+  private long myTotalSize;
+  private final AtomicLong myGeneration = new AtomicLong();
+  private final ConcurrentMap<Key, FutureTask<Entry>> myLoaders = new ConcurrentHashMap<Key, FutureTask<Entry>>();
+  private volatile int myMaxEntries = DEFAULT_MAX_ENTRIES;
+  private volatile long myMaxSize = DEFAULT_MAX_SIZE;
+  private volatile long myErrorTTL = DEFAULT_ERROR_TTL;
+  private volatile File[] myWatchedFiles = new File[0];
+  private final Collection<ChangeListener> myListeners = new CopyOnWriteArrayList<ChangeListener>();
 
   public StaticContentCache() {
     myWatcher = new FilesWatcher(new FilesWatcher.WatchedFilesProvider() {
       public File[] getWatchedFiles() {
-        final Collection<File> values = new ArrayList<File>();
-        values.addAll(myCache.keySet());
-        return values.toArray(new File[values.size()]);
+        return myWatchedFiles;
       }
     });
 
     myWatcher.registerListener(new ChangeListener() {
       public void changeOccured(String requestor) {
-        for (File file : CollectionsUtil.join(myWatcher.getModifiedFiles(), myWatcher.getRemovedFiles())) {
+        for (File file : CollectionsUtil.join(CollectionsUtil.join(myWatcher.getModifiedFiles(), myWatcher.getRemovedFiles()), myWatcher.getNewFiles())) {
           LOG.info("Detected change in " + file + ".");
-          removeEntry(file);
+          invalidate(file);
+        }
+        for (ChangeListener listener : myListeners) {
+          listener.changeOccured(requestor);
         }
       }
     });
 
-    myWatcher.setSleepingPeriod(5000);
+    myWatcher.setSleepingPeriod(DEFAULT_CHECK_INTERVAL);
+  }
+
+  /**
+   * @return content of the file wrapped with given wrapper and encoded with {@link ContentWrapper#ENCODING}.
+   *         Content of {@link ContentWrapper#RAW} is shared between callers and must not be modified,
+   *         text content is encoded on every call
+   */
+  @NotNull
+  public byte[] getContent(@NotNull final File file, @NotNull final ContentWrapper wrapper) throws IOException {
+    return getEntry(new Key(file, wrapper)).getBytes();
+  }
+
+  /**
+   * Same as {@link #getContent}, but a cached entry is only used while the file has the length and
+   * modification time it had when the entry was loaded. Responses that describe the file on disk,
+   * e.g. with an entity tag, get the same content the tag was computed for, without waiting for the watcher
+   */
+  @NotNull
+  public byte[] getCurrentContent(@NotNull final File file, @NotNull final ContentWrapper wrapper) throws IOException {
+    final Key key = new Key(file, wrapper);
+    final Entry entry = getCached(key);
+    if (entry != null) {
+      if (entry.isVersionOf(file)) return entry.getBytes();
+      invalidate(file);
+    }
+    return loadEntry(key).getBytes();
+  }
+
+  /**
+   * @return content of the file wrapped with given wrapper, the wrapper must keep content as text.
+   *         It is decoded once, when the file is loaded
+   */
+  @NotNull
+  public String getText(@NotNull final File file, @NotNull final ContentWrapper wrapper) throws IOException {
+    return getEntry(new Key(file, wrapper)).getText();
+  }
+
+  @NotNull
+  private Entry getEntry(@NotNull final Key key) throws IOException {
+    final Entry entry = getCached(key);
+    return entry != null ? entry : loadEntry(key);
+  }
+
+  /**
+   * @return valid cached entry, an expired entry is removed
+   */
+  @Nullable
+  private Entry getCached(@NotNull final Key key) {
+    final Entry entry = myCache.get(key);
+    if (entry == null) return null;
+    if (entry.isValid()) {
+      entry.touch();
+      return entry;
+    }
+    synchronized (myLock) {
+      if (myCache.get(key) == entry) {
+        removeEntry(key);
+      }
+    }
+    return null;
   }
 
-  public char[] getContent(@NotNull final File file) throws IOException {
-    Entry entry = myCache.get(file);
-    if (entry != null) return entry.getChars();
+  /**
+   * Loads the entry so that only one thread reads a given file,
+   * concurrent requests for the same key wait for its result
+   */
+  @NotNull
+  private Entry loadEntry(@NotNull final Key key) throws IOException {
+    final FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+      public Entry call() {
+        final Entry cached = getCached(key);
+        if (cached != null) return cached;
 
+        final long generation = myGeneration.get();
+        final Entry entry = readEntry(key);
+        if (generation == myGeneration.get()) {
+          putEntry(key, entry);
+        }
+        return entry;
+      }
+    });
+
+    FutureTask<Entry> loader = myLoaders.putIfAbsent(key, task);
+    if (loader == null) {
+      loader = task;
+      try {
+        task.run();
+      } finally {
+        myLoaders.remove(key, task);
+      }
+    }
+
+    try {
+      return loader.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + key.getFile() + " to load");
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException("Failed to load " + key.getFile() + ": " + cause);
+    }
+  }
+
+  @NotNull
+  private Entry readEntry(@NotNull final Key key) {
+    final ContentWrapper wrapper = key.getWrapper();
+    final File file = key.getFile();
+    // the version is taken before the file is read, a change made while reading makes the entry stale
+    final long length = file.length();
+    final long lastModified = file.lastModified();
     try {
-      char[] chars = FileUtil.loadFileText(file, "utf-8");
-      myCache.put(file, new DataEntry(chars));
-      return chars;
+      return wrapper.isText()
+             ? new TextEntry(length, lastModified, wrapper.readText(file))
+             : new DataEntry(length, lastModified, wrapper.read(file));
     } catch (IOException e) {
-      myCache.put(file, new ErrorEntry(e));
-      throw e;
+      return new ErrorEntry(length, lastModified, e, System.currentTimeMillis() + myErrorTTL);
+    }
+  }
+
+  /**
+   * Registers a listener that is notified after cached files were changed on disk
+   */
+  public void addChangeListener(@NotNull final ChangeListener listener) {
+    myListeners.add(listener);
+  }
+
+  public void settingsChanged(@NotNull final Settings settings) {
+    myMaxEntries = Math.max(0, settings.getInt(MAX_ENTRIES_PARAM, DEFAULT_MAX_ENTRIES));
+    myMaxSize = Math.max(0, settings.getLong(MAX_SIZE_PARAM, DEFAULT_MAX_SIZE));
+    myWatcher.setSleepingPeriod(Math.max(100, settings.getInt(CHECK_INTERVAL_PARAM, DEFAULT_CHECK_INTERVAL)));
+    myErrorTTL = Math.max(0, settings.getLong(ERROR_TTL_PARAM, DEFAULT_ERROR_TTL));
+    evictIfNeeded();
+  }
+
+  public int getEntriesCount() {
+    return myCache.size();
+  }
+
+  /**
+   * @return files checked for changes, i.e. cached and referenced files
+   */
+  @NotNull
+  public Collection<File> getWatchedFiles() {
+    return Arrays.asList(myWatchedFiles);
+  }
+
+  public long getTotalSize() {
+    synchronized (myLock) {
+      return myTotalSize;
+    }
+  }
+
+  private void putEntry(@NotNull final Key key, @NotNull final Entry entry) {
+    if (entry.getSize() > myMaxSize) {
+      LOG.debug("Content of " + key.getFile() + " is larger than cache limit of " + myMaxSize + " bytes and will not be cached");
+      return;
+    }
+
+    entry.touch();
+    synchronized (myLock) {
+      removeEntry(key);
+      myCache.put(key, entry);
+      myTotalSize += entry.getSize();
+
+      Set<Key> keys = myFileKeys.get(key.getFile());
+      if (keys == null) {
+        keys = new HashSet<Key>();
+        myFileKeys.put(key.getFile(), keys);
+        if (!myReferencedFiles.contains(key.getFile())) {
+          updateWatchedFiles();
+        }
+      }
+      keys.add(key);
+
+      evictIfNeeded();
+    }
+  }
+
+  /**
+   * Must be called under the lock
+   */
+  private void removeEntry(@NotNull final Key key) {
+    final Entry entry = myCache.remove(key);
+    if (entry == null) return;
+    myTotalSize -= entry.getSize();
+
+    final Set<Key> keys = myFileKeys.get(key.getFile());
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      myFileKeys.remove(key.getFile());
+      if (!myReferencedFiles.contains(key.getFile())) {
+        updateWatchedFiles();
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the array of files checked by the watcher. It is only called when
+   * a file gets its first or loses its last entry, so the watcher thread
+   * does not have to copy the cache keys on every check
+   */
+  private void updateWatchedFiles() {
+    final Set<File> files = new HashSet<File>(myReferencedFiles);
+    files.addAll(myFileKeys.keySet());
+    myWatchedFiles = files.toArray(new File[files.size()]);
+  }
+
+  /**
+   * Sets files which are watched for changes even if they have no cached entries,
+   * change listeners are notified about changes of these files too
+   */
+  public void setReferencedFiles(@NotNull final Collection<File> files) {
+    synchronized (myLock) {
+      myReferencedFiles = new HashSet<File>(files);
+      updateWatchedFiles();
+    }
+  }
+
+  /**
+   * Drops cached content of the changed file. Loads that are in progress
+   * are not cached, as they may have read the old content
+   */
+  public void invalidate(@NotNull final File file) {
+    myGeneration.incrementAndGet();
+    synchronized (myLock) {
+      final Set<Key> keys = myFileKeys.get(file);
+      if (keys == null) return;
+      for (Key key : new ArrayList<Key>(keys)) {
+        removeEntry(key);
+      }
+    }
+  }
+
+  /**
+   * Removes least recently used entries until the cache fits into configured limits.
+   * Entries are ordered by the time of their last use, hits that happen meanwhile
+   * are not taken into account, so the order is approximate
+   */
+  private void evictIfNeeded() {
+    synchronized (myLock) {
+      if (!isOverLimits()) return;
+
+      final List<Map.Entry<Key, Entry>> entries = new ArrayList<Map.Entry<Key, Entry>>(myCache.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<Key, Entry>>() {
+        public int compare(final Map.Entry<Key, Entry> o1, final Map.Entry<Key, Entry> o2) {
+          final long t1 = o1.getValue().getLastUsed();
+          final long t2 = o2.getValue().getLastUsed();
+          return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+        }
+      });
+      for (Map.Entry<Key, Entry> e : entries) {
+        if (!isOverLimits()) break;
+        removeEntry(e.getKey());
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Evicted " + e.getKey().getFile() + " from cache");
+        }
+      }
     }
   }
 
-  private void removeEntry(@NotNull final File file) {
-    myCache.remove(file);
+  private boolean isOverLimits() {
+    return !myCache.isEmpty() && (myCache.size() > myMaxEntries || myTotalSize > myMaxSize);
   }
 
   public void startWatching() {
@@ -87,34 +372,188 @@ public class StaticContentCache {
     myWatcher.stop();
   }
 
-  private static interface Entry {
+  private static class Key {
+    @NotNull private final File myFile;
+    @NotNull private final ContentWrapper myWrapper;
+
+    private Key(@NotNull final File file, @NotNull final ContentWrapper wrapper) {
+      myFile = file;
+      myWrapper = wrapper;
+    }
+
     @NotNull
-    char[] getChars() throws IOException;
+    public File getFile() {
+      return myFile;
+    }
+
+    @NotNull
+    public ContentWrapper getWrapper() {
+      return myWrapper;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key key = (Key) o;
+      return myFile.equals(key.myFile) && myWrapper.equals(key.myWrapper);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * myFile.hashCode() + myWrapper.hashCode();
+    }
   }
 
-  private static class DataEntry implements Entry {
-    private final char[] myData;
+  private static abstract class Entry {
+    private final long myLength;
+    private final long myLastModified;
+    private volatile long myLastUsed;
+
+    protected Entry(final long length, final long lastModified) {
+      myLength = length;
+      myLastModified = lastModified;
+    }
 
-    private DataEntry(@NotNull final char[] data) {
+    /**
+     * @return true if the file has the same length and modification time as when the entry was loaded
+     */
+    public boolean isVersionOf(@NotNull final File file) {
+      return file.length() == myLength && file.lastModified() == myLastModified;
+    }
+
+    public void touch() {
+      myLastUsed = System.nanoTime();
+    }
+
+    public long getLastUsed() {
+      return myLastUsed;
+    }
+
+    public abstract long getSize();
+
+    public abstract boolean isValid();
+
+    @NotNull
+    public abstract byte[] getBytes() throws IOException;
+
+    @NotNull
+    public abstract String getText() throws IOException;
+  }
+
+  private static class DataEntry extends Entry {
+    private final byte[] myData;
+
+    private DataEntry(final long length, final long lastModified, @NotNull final byte[] data) {
+      super(length, lastModified);
       myData = data;
     }
 
+    @Override
+    public long getSize() {
+      return myData.length;
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
     @NotNull
-    public char[] getChars() throws IOException {
+    public byte[] getBytes() throws IOException {
       return myData;
     }
+
+    @Override
+    @NotNull
+    public String getText() throws IOException {
+      throw new IllegalStateException("Content is not kept as text");
+    }
+  }
+
+  /**
+   * Wrapped content is mostly rendered into including pages, so only the text is kept.
+   * Responses that need bytes encode it on demand
+   */
+  private static class TextEntry extends Entry {
+    private final String myText;
+
+    private TextEntry(final long length, final long lastModified, @NotNull final String text) {
+      super(length, lastModified);
+      myText = text;
+    }
+
+    @Override
+    public long getSize() {
+      return 2L * myText.length();
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    @NotNull
+    public byte[] getBytes() throws IOException {
+      return ContentWrapper.encode(myText);
+    }
+
+    @Override
+    @NotNull
+    public String getText() throws IOException {
+      return myText;
+    }
   }
 
-  private static class ErrorEntry implements Entry {
+  /**
+   * Remembers a failed load for a limited time. The same stackless exception
+   * is rethrown on every hit, so serving a missing include stays cheap
+   */
+  private static class ErrorEntry extends Entry {
     private final IOException myException;
+    private final long myExpires;
+
+    private ErrorEntry(final long length, final long lastModified, @NotNull final IOException exception, final long expires) {
+      super(length, lastModified);
+      myException = new CachedIOException(exception);
+      myExpires = expires;
+    }
+
+    @Override
+    public long getSize() {
+      return 0;
+    }
+
+    @Override
+    public boolean isValid() {
+      return System.currentTimeMillis() < myExpires;
+    }
 
-    private ErrorEntry(@NotNull final IOException exception) {
-      myException = exception;
+    @Override
+    @NotNull
+    public byte[] getBytes() throws IOException {
+      throw myException;
     }
 
+    @Override
     @NotNull
-    public char[] getChars() throws IOException {
-      throw new IOException(myException.getMessage()) {{initCause(myException);}};
+    public String getText() throws IOException {
+      throw myException;
+    }
+  }
+
+  private static class CachedIOException extends IOException {
+    private CachedIOException(@NotNull final IOException cause) {
+      super(cause.getMessage());
+      initCause(cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
     }
   }
+
 }
@@ -26,11 +26,13 @@ import org.apache.commons.httpclient.HttpStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.util.WebUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -42,18 +44,21 @@ public class StaticContentController extends BaseController {
   private ControllerPaths myPaths;
   private final Configuration myConfig;
   private final StaticContentCache myCache;
-  private final ContentWrapper myCssWrapper = new ContentWrapper("\n<style type=\"text/css\">\n", "\n</style>\n");
-  private final ContentWrapper myJsWrapper = new ContentWrapper("\n<script type=\"text/javascript\">\n", "\n</script>\n");
-  private final ContentWrapper myHtmlWrapper = new ContentWrapper("", "");
+  private final StaticContentManager myManager;
+  private final StaticAssets myAssets;
 
   public StaticContentController(@NotNull final AuthorizationInterceptor auth,
                                  @NotNull final WebControllerManager web,
                                  @NotNull final ControllerPaths paths,
                                  @NotNull final Configuration config,
-                                 @NotNull final StaticContentCache cache) {
+                                 @NotNull final StaticContentCache cache,
+                                 @NotNull final StaticContentManager manager,
+                                 @NotNull final StaticAssets assets) {
     myPaths = paths;
     myConfig = config;
     myCache = cache;
+    myManager = manager;
+    myAssets = assets;
     final String path = paths.getResourceControllerRegistrationBase();
     web.registerController(path, this);
     auth.addPathNotRequiringAuth(path);
@@ -74,17 +79,50 @@ public class StaticContentController extends BaseController {
       return null;
     }
 
-    ModelAndView modelAndView = processFile(request.getParameter(myPaths.getIncludeCssFileParameter()), myCssWrapper, response);
+    // pages include content after they have obtained the writer, so included content is written as text
+    final boolean include = WebUtils.isIncludeRequest(request);
+
+    // rule ids are positional, so fragments are taken from the snapshot the page is rendered with
+    final RuleFragments fragments = myManager.getSnapshot(request).getFragments();
+
+    final String ruleId = request.getParameter(myPaths.getRuleParameter());
+    if (ruleId != null) {
+      final RuleFragments.Fragment fragment = fragments == null ? null : fragments.getFragment(ruleId);
+      if (fragment == null) {
+        LOG.warn("Failed to find rule to include: " + ruleId + ".");
+        return sendError(response, include, "Rule not found: " + ruleId);
+      }
+      writeBundle(fragments, request, response, include);
+      writeFragment(response, include, fragment);
+      return null;
+    }
+
+    final String placeKey = request.getParameter(myPaths.getPlaceParameter());
+    if (placeKey != null) {
+      final List<String> ruleIds = PlaceRulesExtension.getMatchedRules(request, placeKey);
+      if (ruleIds == null || fragments == null) return null;
+
+      writeBundle(fragments, request, response, include);
+      for (String matchedRuleId : ruleIds) {
+        final RuleFragments.Fragment fragment = fragments.getFragment(matchedRuleId);
+        if (fragment != null) {
+          writeFragment(response, include, fragment);
+        }
+      }
+      return null;
+    }
+
+    ModelAndView modelAndView = processFile(request.getParameter(myPaths.getIncludeCssFileParameter()), myAssets.getCssWrapper(), response, include);
     if (modelAndView != null) {
       return modelAndView;
     }
 
-    modelAndView = processFile(request.getParameter(myPaths.getIncludeJsFileParameter()), myJsWrapper, response);
+    modelAndView = processFile(request.getParameter(myPaths.getIncludeJsFileParameter()), myAssets.getJsWrapper(), response, include);
     if (modelAndView != null) {
       return modelAndView;
     }
 
-    modelAndView = processFile(request.getParameter(myPaths.getIncludeFileParameter()), myHtmlWrapper, response);
+    modelAndView = processFile(request.getParameter(myPaths.getIncludeFileParameter()), ContentWrapper.HTML, response, include);
     if (modelAndView != null) {
       return modelAndView;
     }
@@ -94,56 +132,64 @@ public class StaticContentController extends BaseController {
 
   private ModelAndView processFile(@Nullable String file,
                                    @NotNull ContentWrapper wrapper,
-                                   @NotNull final HttpServletResponse response) throws IOException {
+                                   @NotNull final HttpServletResponse response,
+                                   final boolean include) throws IOException {
 
     if (StringUtil.isEmptyOrSpaces(file)){
       return null;
     }
 
     final File includeFile = myConfig.mapIncludeFilePath(file);
-    if (includeFile != null) {
-      final char[] data;
-      try {
-        data = myCache.getContent(includeFile);
-        wrapper.wrap(response, data);
-      } catch (IOException e) {
-        LOG.warn("Failed to open file to include: " + includeFile + ", error: " + e.toString());
-        return sendError(response, "Failed to open file: " + includeFile.getName());
-      }
+    if (includeFile == null) {
+      LOG.warn("Failed to open file to include: " + file + ".");
+      return sendError(response, include, "Path not found: " + file);
     }
 
-    if (includeFile == null || !includeFile.isFile()) {
-      LOG.warn("Failed to open file to include: " + (includeFile != null ? includeFile : file) + ".");
-      return sendError(response, "Path not found: " + file);
+    // the cache remembers both content and failed reads, so a hit does not touch the file system
+    try {
+      if (include) {
+        response.getWriter().write(myCache.getText(includeFile, wrapper));
+      } else {
+        response.getOutputStream().write(myCache.getContent(includeFile, wrapper));
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to open file to include: " + includeFile + ", error: " + e.toString());
+      return sendError(response, include, "Failed to open file: " + includeFile.getName());
     }
 
     return null;
   }
 
+  private static void writeBundle(@NotNull final RuleFragments fragments,
+                                  @NotNull final HttpServletRequest request,
+                                  @NotNull final HttpServletResponse response,
+                                  final boolean include) throws IOException {
+    final RuleFragments.Fragment bundle = fragments.takeBundle(request);
+    if (bundle != null) {
+      writeFragment(response, include, bundle);
+    }
+  }
+
   @Nullable
   private ModelAndView sendError(@NotNull final HttpServletResponse response,
+                                 final boolean include,
                                  @NotNull final String errorMessage) throws IOException {
-    response.getWriter().write("ERROR: Content for StaticUIExtensions plugin was not found. " + errorMessage);
+    final String error = ContentWrapper.error(errorMessage);
+    if (include) {
+      response.getWriter().write(error);
+    } else {
+      response.getOutputStream().write(ContentWrapper.encode(error));
+    }
     return null;
   }
 
-  private static class ContentWrapper {
-    @NotNull
-    private final String prefix;
-    @NotNull
-    private final String suffix;
-
-    private ContentWrapper(@NotNull String prefix, @NotNull String suffix) {
-      this.prefix = prefix;
-      this.suffix = suffix;
-    }
-
-    public void wrap(@NotNull final HttpServletResponse response, char[] data) throws IOException {
-      response.getWriter().write(prefix);
-      response.getWriter().write(data);
-      response.getWriter().write(suffix);
+  private static void writeFragment(@NotNull final HttpServletResponse response,
+                                    final boolean include,
+                                    @NotNull final RuleFragments.Fragment fragment) throws IOException {
+    if (include) {
+      response.getWriter().write(fragment.getText());
+    } else {
+      response.getOutputStream().write(fragment.getData());
     }
   }
-
-
 }
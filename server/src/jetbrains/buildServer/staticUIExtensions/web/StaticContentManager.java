@@ -16,27 +16,149 @@
 
 package jetbrains.buildServer.staticUIExtensions.web;
 
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.concurrent.CopyOnWriteArrayList;
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 16.11.11 20:07
  */
 public class StaticContentManager {
-  private final Collection<RulePageExtension> myExtensions = new CopyOnWriteArrayList<RulePageExtension>();
+  private static final Logger LOG = Logger.getInstance(StaticContentManager.class.getName());
+  private static final String SNAPSHOT_ATTRIBUTE = StaticContentManager.class.getName() + ".snapshot";
 
-  public synchronized void updateExtensions(@NotNull final Collection<RulePageExtension> newExtensions) {
-    for (RulePageExtension extension : myExtensions) {
+  private volatile ExtensionsSnapshot mySnapshot = ExtensionsSnapshot.EMPTY;
+
+  @NotNull
+  public ExtensionsSnapshot getSnapshot() {
+    return mySnapshot;
+  }
+
+  /**
+   * @return snapshot pinned to the request, so all extensions on a page
+   *         are shown from the same configuration
+   */
+  @NotNull
+  public ExtensionsSnapshot getSnapshot(@NotNull final HttpServletRequest request) {
+    final Object pinned = request.getAttribute(SNAPSHOT_ATTRIBUTE);
+    if (pinned instanceof ExtensionsSnapshot) {
+      return (ExtensionsSnapshot) pinned;
+    }
+
+    final ExtensionsSnapshot snapshot = mySnapshot;
+    request.setAttribute(SNAPSHOT_ATTRIBUTE, snapshot);
+    return snapshot;
+  }
+
+  public void updateExtensions(@NotNull final Collection<? extends SimplePageExtension> newExtensions) {
+    updateExtensions(newExtensions, null, null);
+  }
+
+  /**
+   * Registers new extensions. Extensions with unchanged content stay registered.
+   * Extensions are registered in the given order, so for each page place everything
+   * after the first changed extension is re-registered.
+   * <p/>
+   * New extensions are registered before the new snapshot is published and old ones
+   * are unregistered after it, so pages show either the old or the new configuration
+   *
+   * @param matcher matcher for the new extensions, or null if extensions match their rules themselves
+   * @param fragments rendered content of rules of the new extensions, published with them
+   */
+  public synchronized void updateExtensions(@NotNull final Collection<? extends SimplePageExtension> newExtensions,
+                                            @Nullable final RulesMatcher matcher,
+                                            @Nullable final RuleFragments fragments) {
+    final ExtensionsSnapshot current = mySnapshot;
+    final Map<PlaceId, List<SimplePageExtension>> oldByPlace = groupByPlace(current.getExtensions());
+    final Map<PlaceId, List<SimplePageExtension>> newByPlace = groupByPlace(newExtensions);
+
+    final List<SimplePageExtension> toUnregister = new ArrayList<SimplePageExtension>();
+    final List<SimplePageExtension> toRegister = new ArrayList<SimplePageExtension>();
+    final List<SimplePageExtension> published = new ArrayList<SimplePageExtension>();
+
+    for (Map.Entry<PlaceId, List<SimplePageExtension>> e : newByPlace.entrySet()) {
+      final List<SimplePageExtension> placeExtensions = e.getValue();
+      List<SimplePageExtension> oldExtensions = oldByPlace.get(e.getKey());
+      if (oldExtensions == null) oldExtensions = Collections.emptyList();
+
+      final Set<Object> newKeys = new HashSet<Object>();
+      for (SimplePageExtension ext : placeExtensions) {
+        final Object key = getContentKey(ext);
+        if (key != null) newKeys.add(key);
+      }
+
+      int oldIndex = 0;
+      int newIndex = 0;
+      for (; newIndex < placeExtensions.size(); newIndex++) {
+        final Object key = getContentKey(placeExtensions.get(newIndex));
+        if (key == null) break;
+
+        // skip removed extensions, they do not change the order of the rest
+        while (oldIndex < oldExtensions.size() && !newKeys.contains(getContentKey(oldExtensions.get(oldIndex)))) {
+          toUnregister.add(oldExtensions.get(oldIndex++));
+        }
+        if (oldIndex >= oldExtensions.size() || !key.equals(getContentKey(oldExtensions.get(oldIndex)))) break;
+
+        published.add(oldExtensions.get(oldIndex++));
+      }
+
+      toUnregister.addAll(oldExtensions.subList(oldIndex, oldExtensions.size()));
+      toRegister.addAll(placeExtensions.subList(newIndex, placeExtensions.size()));
+    }
+
+    for (Map.Entry<PlaceId, List<SimplePageExtension>> e : oldByPlace.entrySet()) {
+      if (!newByPlace.containsKey(e.getKey())) {
+        toUnregister.addAll(e.getValue());
+      }
+    }
+
+    for (SimplePageExtension extension : toRegister) {
+      if (extension instanceof ReloadableExtension) {
+        ((ReloadableExtension) extension).setManager(this);
+      }
+      extension.register();
+    }
+
+    published.addAll(toRegister);
+    mySnapshot = new ExtensionsSnapshot(current.getVersion() + 1, published, matcher, fragments);
+
+    for (SimplePageExtension extension : toUnregister) {
       extension.unregister();
     }
 
-    myExtensions.clear();
-    for (RulePageExtension newExtension : newExtensions) {
-      newExtension.register();
-      myExtensions.add(newExtension);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("StaticUIExtensions extensions updated to version " + mySnapshot.getVersion() + ": " +
+              (published.size() - toRegister.size()) + " unchanged, " +
+              toUnregister.size() + " unregistered, " + toRegister.size() + " registered");
+    }
+  }
+
+  @Nullable
+  private static Object getContentKey(@NotNull final SimplePageExtension extension) {
+    if (extension instanceof ReloadableExtension) {
+      return ((ReloadableExtension) extension).getContentKey();
+    }
+    return null;
+  }
+
+  @NotNull
+  private static Map<PlaceId, List<SimplePageExtension>> groupByPlace(@NotNull final Collection<? extends SimplePageExtension> extensions) {
+    final Map<PlaceId, List<SimplePageExtension>> result = new LinkedHashMap<PlaceId, List<SimplePageExtension>>();
+    for (SimplePageExtension extension : extensions) {
+      List<SimplePageExtension> list = result.get(extension.getPlaceId());
+      if (list == null) {
+        list = new ArrayList<SimplePageExtension>();
+        result.put(extension.getPlaceId(), list);
+      }
+      list.add(extension);
     }
+    return result;
   }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions.web;
+
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.context.ServletContextAware;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes static files to the response.
+ * <p/>
+ * Files up to the hot file size are kept in {@link StaticContentCache}, the cache
+ * should not be shared with included files, otherwise page edits would re-render rules.
+ * A cached file is served only while its length and modification time are unchanged,
+ * so the body matches the entity tag the controller computed from the file on disk.
+ * Larger files are handed to the servlet container sendfile support when
+ * the connector provides it, otherwise they are copied with {@link FileChannel#transferTo}.
+ * A single byte range is supported, other range requests get the whole file.
+ * If-Range may contain either the date or the entity tag set by the controller.
+ * Content type is resolved with the servlet context the sender bean is initialized with.
+ */
+public class StaticFileSender implements ServletContextAware {
+  public static final int DEFAULT_HOT_FILE_SIZE = 64 * 1024;
+
+  private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+  private final StaticContentCache myCache;
+  private volatile long myHotFileSize = DEFAULT_HOT_FILE_SIZE;
+  private volatile ServletContext myServletContext;
+
+  public StaticFileSender(@NotNull final StaticContentCache cache) {
+    myCache = cache;
+  }
+
+  public void setServletContext(@NotNull final ServletContext servletContext) {
+    myServletContext = servletContext;
+  }
+
+  @NotNull
+  public StaticContentCache getCache() {
+    return myCache;
+  }
+
+  public void setHotFileSize(final long hotFileSize) {
+    myHotFileSize = hotFileSize;
+  }
+
+  public void send(@NotNull final File file,
+                   @NotNull final HttpServletRequest request,
+                   @NotNull final HttpServletResponse response) throws IOException {
+    final byte[] hot = file.length() <= myHotFileSize ? myCache.getCurrentContent(file, ContentWrapper.RAW) : null;
+    final long length = hot != null ? hot.length : file.length();
+
+    final ServletContext context = myServletContext;
+    final String mimeType = context != null ? context.getMimeType(file.getName()) : null;
+    response.setContentType(mimeType != null ? mimeType : "application/octet-stream");
+    response.setHeader("Accept-Ranges", "bytes");
+
+    final long[] range = getRange(request, length, file.lastModified(), response.getHeader("ETag"));
+    if (range == null) {
+      response.setHeader("Content-Range", "bytes */" + length);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    final long start = range[0];
+    final long count = range[1] - range[0];
+    if (count != length) {
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader("Content-Range", "bytes " + start + "-" + (range[1] - 1) + "/" + length);
+    }
+    response.setHeader("Content-Length", String.valueOf(count));
+
+    if ("HEAD".equals(request.getMethod())) return;
+
+    if (hot != null) {
+      response.getOutputStream().write(hot, (int) start, (int) count);
+      return;
+    }
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+      request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getAbsolutePath());
+      request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+      request.setAttribute(SENDFILE_END_ATTRIBUTE, start + count);
+      return;
+    }
+
+    transfer(file, start, count, response.getOutputStream());
+  }
+
+  private static void transfer(@NotNull final File file, long position, long count, @NotNull final OutputStream os) throws IOException {
+    FileInputStream is = null;
+    try {
+      is = new FileInputStream(file);
+      final FileChannel channel = is.getChannel();
+      final WritableByteChannel target = Channels.newChannel(os);
+      while (count > 0) {
+        final long sent = channel.transferTo(position, count, target);
+        if (sent <= 0) break;
+        position += sent;
+        count -= sent;
+      }
+    } finally {
+      FileUtil.close(is);
+    }
+  }
+
+  /**
+   * @return [start, end) of the requested range, the whole file if there is no
+   *         supported range request, or null if the range cannot be satisfied
+   */
+  @Nullable
+  private static long[] getRange(@NotNull final HttpServletRequest request,
+                                 final long length,
+                                 final long lastModified,
+                                 @Nullable final String etag) {
+    final long[] full = new long[]{0, length};
+
+    final String header = request.getHeader("Range");
+    if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) return full;
+
+    final String ifRange = request.getHeader("If-Range");
+    if (ifRange != null) {
+      if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+        // weak tags are never equal for range requests
+        if (!ifRange.equals(etag)) return full;
+      } else {
+        try {
+          if (request.getDateHeader("If-Range") / 1000 != lastModified / 1000) return full;
+        } catch (IllegalArgumentException e) {
+          return full;
+        }
+      }
+    }
+
+    final String spec = header.substring("bytes=".length()).trim();
+    final int dash = spec.indexOf('-');
+    if (dash < 0) return full;
+
+    final long start;
+    final long end;
+    try {
+      if (dash == 0) {
+        final long suffix = Long.parseLong(spec.substring(1).trim());
+        start = Math.max(0, length - suffix);
+        end = length;
+        if (suffix <= 0) return null;
+      } else {
+        start = Long.parseLong(spec.substring(0, dash).trim());
+        final String last = spec.substring(dash + 1).trim();
+        end = last.length() == 0 ? length : Math.min(length, Long.parseLong(last) + 1);
+      }
+    } catch (NumberFormatException e) {
+      return full;
+    }
+
+    if (start >= length || start >= end) return null;
+    return new long[]{start, end};
+  }
+}
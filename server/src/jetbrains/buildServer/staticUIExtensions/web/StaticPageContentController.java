@@ -21,6 +21,8 @@ import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.controllers.AuthorizationInterceptor;
 import jetbrains.buildServer.controllers.HttpDownloadProcessor;
 import jetbrains.buildServer.staticUIExtensions.Configuration;
+import jetbrains.buildServer.staticUIExtensions.SettingsChangeListener;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.jetbrains.annotations.NotNull;
@@ -32,19 +34,34 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
-public class StaticPageContentController extends StaticResourcesController {
+public class StaticPageContentController extends StaticResourcesController implements SettingsChangeListener {
 
   private static final Logger LOG = Logger.getInstance(StaticPageContentController.class.getName());
 
   private static final String PUBLIC_STATIC_CONTENT_PAGES_PATH = "/app/static_content/";
   private static final String FOLDER_NAME = "pages";
 
+  public static final String SERVING_PARAM = "pages.serving";
+  public static final String SERVING_DIRECT = "direct";
+  public static final String HOT_FILE_SIZE_PARAM = "pages.hot-file-size";
+  private static final String CACHE_PARAMS_PREFIX = "pages.";
+
+  private final StaticContentCache myCache;
+  private final StaticFileSender mySender;
+  private volatile boolean myDirect;
+  private volatile CacheControlPolicy myCacheControl = CacheControlPolicy.EMPTY;
+
   public StaticPageContentController(@NotNull final AuthorizationInterceptor auth,
                                      @NotNull final WebControllerManager web,
                                      @NotNull final Configuration config,
-                                     @NotNull final HttpDownloadProcessor httpDownloadProcessor) {
+                                     @NotNull final HttpDownloadProcessor httpDownloadProcessor,
+                                     @NotNull final StaticFileSender sender) {
     super(httpDownloadProcessor);
+    myCache = sender.getCache();
+    mySender = sender;
     final File container = FileUtil.getCanonicalFile(new File(config.getIncludeFilesBase(), FOLDER_NAME));
     if (!container.exists()) {
       try {
@@ -79,6 +96,38 @@ public class StaticPageContentController extends StaticResourcesController {
     auth.addPathNotRequiringAuth(path);
   }
 
+  public void settingsChanged(@NotNull final Settings settings) {
+    myDirect = SERVING_DIRECT.equals(settings.getString(SERVING_PARAM));
+    mySender.setHotFileSize(settings.getLong(HOT_FILE_SIZE_PARAM, StaticFileSender.DEFAULT_HOT_FILE_SIZE));
+    myCacheControl = new CacheControlPolicy(settings);
+    myCache.settingsChanged(getCacheSettings(settings));
+  }
+
+  /**
+   * Static pages are kept in a cache of their own, its limits are set with "pages.cache.*" params
+   */
+  @NotNull
+  private static Settings getCacheSettings(@NotNull final Settings settings) {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (Map.Entry<String, String> e : settings.getParams().entrySet()) {
+      if (e.getKey().startsWith(CACHE_PARAMS_PREFIX + "cache.")) {
+        params.put(e.getKey().substring(CACHE_PARAMS_PREFIX.length()), e.getValue());
+      }
+    }
+    return new Settings(params);
+  }
+
+  @Nullable
+  @Override
+  protected String getCacheControl(@NotNull final String path, @NotNull final Resource resource) {
+    return myCacheControl.getCacheControl(path.replace(PUBLIC_STATIC_CONTENT_PAGES_PATH, ""));
+  }
+
+  @Override
+  protected boolean isETagSupported() {
+    return myDirect;
+  }
+
   @Nullable
   @Override
   protected ModelAndView doHandle(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response) throws Exception {
@@ -88,6 +137,11 @@ public class StaticPageContentController extends StaticResourcesController {
       return null;
     }
 
+    if (myDirect) {
+      mySender.send(resource.getFile(), request, response);
+      return null;
+    }
+
     return myHttpDownloadProcessor.processFileDownload(resource.getFile(), false, request, response, null);
   }
 }
@@ -29,6 +29,7 @@ import org.springframework.web.servlet.mvc.LastModified;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -38,6 +39,10 @@ import java.io.IOException;
  * You can create subtype or instantiate as a Spring bean with special ResourceProvider.
  * <p/>
  * ResourceProvider can be set both from constructor and as a parameter.
+ * <p/>
+ * When the controller writes responses itself (see {@link #isETagSupported()}) files are served
+ * with strong content based ETags and If-None-Match takes precedence over If-Modified-Since.
+ * Otherwise {@link HttpDownloadProcessor} owns the ETag header and only modification dates are checked.
  *
  * @author Vladislav.Rassokhin
  */
@@ -53,6 +58,7 @@ public class StaticResourcesController extends BaseController implements LastMod
   private static final Logger LOG = Logger.getInstance(StaticResourcesController.class.getName());
 
   private ResourceProvider myProvider;
+  private final ETagCache myETags = new ETagCache();
 
   public StaticResourcesController(@NotNull final HttpDownloadProcessor httpDownloadProcessor) {
     myHttpDownloadProcessor = httpDownloadProcessor;
@@ -62,7 +68,14 @@ public class StaticResourcesController extends BaseController implements LastMod
     myProvider = provider;
   }
 
+  /**
+   * With ETags conditional requests are checked in {@link #getResourceToProcess}, where entity tags
+   * are known, so the dispatcher must not answer them by modification date alone
+   */
   public long getLastModified(@NotNull final HttpServletRequest request) {
+    if (isETagSupported()) {
+      return -1;
+    }
     final Resource resource = getResource(request);
     if (resource != null) {
       try {
@@ -76,6 +89,14 @@ public class StaticResourcesController extends BaseController implements LastMod
     return -1;
   }
 
+  /**
+   * @return true if the response is written by the controller, so content based ETags are
+   * set and checked here, false if {@link HttpDownloadProcessor} sets its own ETag header
+   */
+  protected boolean isETagSupported() {
+    return false;
+  }
+
   @Nullable
   @Override
   protected ModelAndView doHandle(@NotNull final HttpServletRequest request, @NotNull final HttpServletResponse response) throws Exception {
@@ -103,6 +124,26 @@ public class StaticResourcesController extends BaseController implements LastMod
       return null;
     }
 
+    final String cacheControl = getCacheControl(getPath(request), resource);
+    if (cacheControl != null) {
+      response.setHeader("Cache-Control", cacheControl);
+    }
+
+    final String etag = isETagSupported() ? getETag(resource) : null;
+    if (etag != null) {
+      response.setHeader("ETag", etag);
+      final String ifNoneMatch = request.getHeader("If-None-Match");
+      if (ifNoneMatch != null) {
+        if (matches(ifNoneMatch, etag)) {
+          LOG.debug("Resource ETag matched - returning 304");
+          response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          return null;
+        }
+        response.setDateHeader("Last-Modified", resource.lastModified());
+        return resource;
+      }
+    }
+
     // check not modified
     if (new ServletWebRequest(request, response).checkNotModified(resource.lastModified())) {
       LOG.debug("Resource not modified - returning 304");
@@ -112,12 +153,51 @@ public class StaticResourcesController extends BaseController implements LastMod
     return resource;
   }
 
+  /**
+   * @param path    requested path
+   * @param resource resource to be served
+   * @return Cache-Control header value for the resource, null to not send the header
+   */
+  @Nullable
+  protected String getCacheControl(@NotNull final String path, @NotNull final Resource resource) {
+    return null;
+  }
+
+  @Nullable
+  private String getETag(@NotNull final Resource resource) {
+    try {
+      final File file = resource.getFile();
+      return file != null && file.isFile() ? myETags.getETag(file) : null;
+    } catch (IOException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Cannot compute ETag for resource " + resource, e);
+      }
+      return null;
+    }
+  }
+
+  private static boolean matches(@NotNull final String ifNoneMatch, @NotNull final String etag) {
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  @NotNull
+  private static String getPath(@NotNull final HttpServletRequest request) {
+    return WebUtil.getPathFromUrl(WebUtil.getOriginalPathWithoutAuthenticationType(request));
+  }
+
   @Nullable
   protected Resource getResource(@NotNull final HttpServletRequest request) {
     if (myProvider == null) {
       return null;
     }
-    final String path = WebUtil.getPathFromUrl(WebUtil.getOriginalPathWithoutAuthenticationType(request));
+    final String path = getPath(request);
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("Trying relative path [" + path + "]");
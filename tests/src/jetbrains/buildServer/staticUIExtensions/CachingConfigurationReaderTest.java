@@ -0,0 +1,146 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.staticUIExtensions.config.CachingConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationFingerprint;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReaderImpl;
+import jetbrains.buildServer.staticUIExtensions.config.StaxConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class CachingConfigurationReaderTest extends BaseTestCase {
+  private PagePlacesCollector myCollector;
+  private ServerPaths myPaths;
+  private File myConfig;
+  private File myCache;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCollector = new PagePlacesCollector();
+    myPaths = new ServerPaths(createTempDir().getAbsolutePath());
+    myConfig = new File(myPaths.getConfigDir(), "static-ui-extensions.xml");
+    Assert.assertTrue(myConfig.getParentFile().mkdirs());
+    myCache = createReader().getCacheFile(myConfig);
+  }
+
+  @NotNull
+  private CachingConfigurationReader createReader() {
+    return createReader(new ConfigurationFingerprint());
+  }
+
+  @NotNull
+  private CachingConfigurationReader createReader(@NotNull final ConfigurationFingerprint fingerprint) {
+    return new CachingConfigurationReader(new ConfigurationReaderImpl(myCollector), myCollector, fingerprint, myPaths);
+  }
+
+  @Test
+  public void test_cache_is_not_kept_with_configuration() throws Exception {
+    FileUtil.copy(Paths.getConfigsFile("config_01.xml"), myConfig);
+    createReader().parseConfiguration(myConfig);
+
+    Assert.assertTrue(myCache.isFile());
+    Assert.assertTrue(myCache.getPath().startsWith(myPaths.getCachesDir().getPath()), myCache.getPath());
+    Assert.assertEquals(myConfig.getParentFile().list(), new String[]{myConfig.getName()});
+  }
+
+  @Test
+  public void test_watcher_fingerprint_is_reused() throws Exception {
+    FileUtil.copy(Paths.getConfigsFile("config_01.xml"), myConfig);
+    final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+    final byte[] hash = fingerprint.update(myConfig);
+    Assert.assertSame(fingerprint.get(myConfig), hash);
+
+    Assert.assertEquals(createReader(fingerprint).parseConfiguration(myConfig).size(), 4);
+    Assert.assertSame(fingerprint.get(myConfig), hash);
+  }
+
+  @Test
+  public void test_same_as_xml_reader() throws Exception {
+    final ConfigurationReader xml = new StaxConfigurationReader(myCollector);
+    for (String name : new String[]{"config_01.xml", "config_02.xml", "config_03.xml", "config_04.xml", "config_05.xml", "config_06.xml", "config_07.xml"}) {
+      FileUtil.copy(Paths.getConfigsFile(name), myConfig);
+
+      // first reader parses xml, the second one loads the cache
+      for (int i = 0; i < 2; i++) {
+        final ConfigurationReader reader = createReader();
+        Assert.assertEquals(new ArrayList<Rule>(reader.parseConfiguration(myConfig)), new ArrayList<Rule>(xml.parseConfiguration(myConfig)), name);
+        Assert.assertEquals(reader.parseSettings(myConfig), xml.parseSettings(myConfig), name);
+        Assert.assertTrue(myCache.isFile(), name);
+      }
+    }
+  }
+
+  @Test
+  public void test_cache_is_reused() throws Exception {
+    FileUtil.copy(Paths.getConfigsFile("config_01.xml"), myConfig);
+    createReader().parseConfiguration(myConfig);
+
+    final byte[] cache = FileUtil.loadFileBytes(myCache);
+    Assert.assertTrue(myCache.setLastModified(1000));
+
+    final Collection<Rule> rules = createReader().parseConfiguration(myConfig);
+    Assert.assertEquals(rules.size(), 4);
+    Assert.assertEquals(myCache.lastModified(), 1000);
+    Assert.assertEquals(FileUtil.loadFileBytes(myCache), cache);
+  }
+
+  @Test
+  public void test_changed_xml_is_parsed() throws Exception {
+    FileUtil.copy(Paths.getConfigsFile("config_01.xml"), myConfig);
+    final ConfigurationReader reader = createReader();
+    Assert.assertEquals(reader.parseConfiguration(myConfig).size(), 4);
+
+    FileUtil.copy(Paths.getConfigsFile("config_02.xml"), myConfig);
+    Assert.assertEquals(reader.parseConfiguration(myConfig).size(), 1);
+    Assert.assertEquals(createReader().parseConfiguration(myConfig).size(), 1);
+  }
+
+  @Test
+  public void test_broken_cache_is_ignored() throws Exception {
+    FileUtil.copy(Paths.getConfigsFile("config_01.xml"), myConfig);
+    FileUtil.writeFile(myCache, "broken");
+
+    Assert.assertEquals(createReader().parseConfiguration(myConfig).size(), 4);
+    Assert.assertEquals(createReader().parseConfiguration(myConfig).size(), 4);
+  }
+
+  @Test
+  public void test_invalid_xml_is_not_cached() throws Exception {
+    FileUtil.writeFile(myConfig, "<root><rule place-id='ALL_PAGES_HEADER' html-file='a.html'></root>");
+    try {
+      createReader().parseConfiguration(myConfig);
+      Assert.fail();
+    } catch (ConfigurationException e) {
+      Assert.assertTrue(e.getMessage().startsWith("Failed to parse configuration file"), e.getMessage());
+    }
+    Assert.assertFalse(myCache.exists());
+  }
+}
@@ -60,7 +60,8 @@ public class ConfigurationListenerTest extends BaseTestCase {
     myListener = new ConfigurationListener(
             myReader,
             myInitializer,
-            myConfig
+            myConfig,
+            Collections.<SettingsChangeListener>emptyList()
             );
   }
 
@@ -20,7 +20,9 @@ import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReader;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReaderImpl;
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -32,15 +34,20 @@ import java.util.Collection;
  *         Date: 16.11.11 19:17
  */
 public class ConfigurationReaderTest extends BaseTestCase {
-  private PagePlacesCollector myCollector;
-  private ConfigurationReader myReader;
+  protected PagePlacesCollector myCollector;
+  protected ConfigurationReader myReader;
 
   @BeforeMethod
   @Override
   protected void setUp() throws Exception {
     super.setUp();
     myCollector = new PagePlacesCollector();
-    myReader = new ConfigurationReaderImpl(myCollector);
+    myReader = createReader(myCollector);
+  }
+
+  @NotNull
+  protected ConfigurationReader createReader(@NotNull final PagePlacesCollector collector) {
+    return new ConfigurationReaderImpl(collector);
   }
 
   @Test
@@ -148,4 +155,19 @@ public class ConfigurationReaderTest extends BaseTestCase {
 
     System.out.println(rules);
   }
+
+  @Test
+  public void test_read_settings() throws ConfigurationException {
+    final Settings settings = myReader.parseSettings(Paths.getConfigsFile("config_07.xml"));
+    Assert.assertEquals(settings.getInt("cache.max-entries", 0), 10);
+    Assert.assertEquals(settings.getLong("cache.max-size", 0), 2048);
+    Assert.assertEquals(settings.getLong("unknown", 42), 42);
+
+    Assert.assertEquals(myReader.parseConfiguration(Paths.getConfigsFile("config_07.xml")).size(), 1);
+  }
+
+  @Test
+  public void test_read_no_settings() throws ConfigurationException {
+    Assert.assertEquals(myReader.parseSettings(Paths.getConfigsFile("config_01.xml")), Settings.EMPTY);
+  }
 }
@@ -17,19 +17,25 @@
 package jetbrains.buildServer.staticUIExtensions;
 
 import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationFingerprint;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationWatcher;
 import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.util.WaitForAssert;
+import org.jetbrains.annotations.NotNull;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.api.Invocation;
 import org.jmock.lib.action.CustomAction;
+import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -64,8 +70,9 @@ public class ConfigurationWatcherTest extends BaseTestCase {
       });
     }});
 
-    myWatcher = new ConfigurationWatcher(myConfig, Collections.singleton(myListener));
+    myWatcher = new ConfigurationWatcher(myConfig, Collections.singleton(myListener), new ConfigurationFingerprint());
     myWatcher.setCheckInterval(10);
+    myWatcher.setQuietPeriod(50);
   }
 
   @AfterMethod
@@ -92,6 +99,38 @@ public class ConfigurationWatcherTest extends BaseTestCase {
     startAndWaitForChange();
   }
 
+  private ConfigurationWatcher createWatcher(@NotNull final ScheduledExecutorService executor) {
+    final ConfigurationWatcher watcher = new ConfigurationWatcher(myConfig, Collections.singleton(myListener), new ConfigurationFingerprint()) {
+      @NotNull
+      @Override
+      protected ScheduledExecutorService createExecutor() {
+        return executor;
+      }
+    };
+    watcher.setCheckInterval(10);
+    watcher.setQuietPeriod(300);
+    return watcher;
+  }
+
+  private void waitForScheduledReload(@NotNull final ManualExecutor executor) {
+    new WaitForAssert(1000) {
+      @Override
+      protected boolean condition() {
+        return executor.getPendingCount() == 1;
+      }
+    };
+  }
+
+  /**
+   * Replaces the configuration file at once, so the file watcher may not observe a partially written file
+   */
+  private void replaceConfig(@NotNull final String content, final long lastModified) {
+    final File file = new File(myConfigXml.getPath() + ".new");
+    FileUtil.writeFile(file, content);
+    Assert.assertTrue(file.setLastModified(lastModified));
+    Assert.assertTrue(file.renameTo(myConfigXml));
+  }
+
   private int startAndWaitForChange() {
     final int count = myChangeCount.get();
     myWatcher.startWatching();
@@ -119,4 +158,220 @@ public class ConfigurationWatcherTest extends BaseTestCase {
     FileUtil.writeFile(myConfigXml, "this is config");
     waitForCounter(count  + 1);
   }
+
+  @Test
+  public void testBurstOfWritesIsReloadedOnce() {
+    final ManualExecutor executor = new ManualExecutor();
+    myWatcher = createWatcher(executor);
+    FileUtil.writeFile(myConfigXml, "this is config");
+    myWatcher.startWatching();
+    Assert.assertEquals(executor.runPending(), 1);
+    Assert.assertEquals(myChangeCount.get(), 1);
+
+    final StringBuilder content = new StringBuilder("this is config and more");
+    FileUtil.writeFile(myConfigXml, content.toString());
+    waitForScheduledReload(executor);
+    Assert.assertEquals(executor.getPendingDelay(), 300);
+
+    for (int i = 0; i < 4; i++) {
+      content.append(" and more");
+      FileUtil.writeFile(myConfigXml, content.toString());
+      Assert.assertEquals(executor.runPending(), 1);
+      Assert.assertEquals(executor.getPendingCount(), 1, "Reload must be postponed while the file is changed");
+      Assert.assertEquals(myChangeCount.get(), 1);
+    }
+
+    Assert.assertEquals(executor.runPending(), 1);
+    Assert.assertEquals(myChangeCount.get(), 2);
+
+    // the file watcher may still report writes of the burst it has not seen yet
+    executor.runPending();
+    Assert.assertEquals(myChangeCount.get(), 2);
+  }
+
+  @Test
+  public void testReloadIsSkippedForSameContent() {
+    final ManualExecutor executor = new ManualExecutor();
+    myWatcher = createWatcher(executor);
+    FileUtil.writeFile(myConfigXml, "this is config");
+    myWatcher.startWatching();
+    Assert.assertEquals(executor.runPending(), 1);
+    Assert.assertEquals(myChangeCount.get(), 1);
+
+    replaceConfig("this is config", myConfigXml.lastModified() - 10000);
+    waitForScheduledReload(executor);
+    Assert.assertEquals(executor.runPending(), 1);
+    Assert.assertEquals(myWatcher.getSkippedReloadsCount(), 1);
+    Assert.assertEquals(myChangeCount.get(), 1);
+
+    replaceConfig("this is new config", myConfigXml.lastModified() + 10000);
+    waitForScheduledReload(executor);
+    Assert.assertEquals(executor.runPending(), 1);
+    Assert.assertEquals(myChangeCount.get(), 2);
+    Assert.assertEquals(myWatcher.getAppliedReloadsCount(), 2);
+    Assert.assertEquals(myWatcher.getSkippedReloadsCount(), 1);
+  }
+
+  @Test
+  public void testStartDoesNotWaitForReload() throws InterruptedException {
+    FileUtil.writeFile(myConfigXml, "this is config");
+    final CountDownLatch latch = new CountDownLatch(1);
+    final ConfigurationWatcher watcher = new ConfigurationWatcher(myConfig, Collections.<ConfigurationChangeListener>singleton(new ConfigurationChangeListener() {
+      public void configurationChanged() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        myChangeCount.incrementAndGet();
+      }
+    }), new ConfigurationFingerprint());
+
+    try {
+      watcher.startWatching();
+      Assert.assertEquals(myChangeCount.get(), 0);
+
+      latch.countDown();
+      waitForCounter(1);
+    } finally {
+      watcher.stopWatching();
+    }
+  }
+
+  @Test
+  public void testStopLetsReloadInProgressComplete() throws InterruptedException {
+    FileUtil.writeFile(myConfigXml, "this is config");
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final ConfigurationWatcher watcher = new ConfigurationWatcher(myConfig, Collections.<ConfigurationChangeListener>singleton(new ConfigurationChangeListener() {
+      public void configurationChanged() {
+        started.countDown();
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        myChangeCount.incrementAndGet();
+      }
+    }), new ConfigurationFingerprint());
+    watcher.startWatching();
+    started.await();
+
+    final Thread stopper = new Thread(new Runnable() {
+      public void run() {
+        watcher.stopWatching();
+      }
+    });
+    stopper.start();
+    new WaitForAssert(1000) {
+      @Override
+      protected boolean condition() {
+        return stopper.getState() == Thread.State.TIMED_WAITING;
+      }
+    };
+    Assert.assertEquals(myChangeCount.get(), 0);
+
+    latch.countDown();
+    stopper.join();
+    Assert.assertEquals(myChangeCount.get(), 1, "Reload in progress must not be interrupted");
+  }
+
+  /**
+   * Collects submitted tasks and runs them only when asked to, so quiet periods pass when a test decides.
+   */
+  private static class ManualExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private final List<ManualTask<?>> myTasks = new ArrayList<ManualTask<?>>();
+    private boolean myShutdown;
+
+    public synchronized int getPendingCount() {
+      return myTasks.size();
+    }
+
+    public synchronized long getPendingDelay() {
+      return myTasks.get(0).getDelay(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs tasks that were pending at the moment of the call, ignoring their delays
+     * @return number of tasks run
+     */
+    public int runPending() {
+      final List<ManualTask<?>> tasks;
+      synchronized (this) {
+        tasks = new ArrayList<ManualTask<?>>(myTasks);
+        myTasks.clear();
+      }
+      for (ManualTask<?> task : tasks) {
+        task.run();
+      }
+      return tasks.size();
+    }
+
+    private synchronized <V> ManualTask<V> add(@NotNull final ManualTask<V> task) {
+      if (myShutdown) throw new RejectedExecutionException("Executor is shut down");
+      myTasks.add(task);
+      return task;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      return add(new ManualTask<Object>(Executors.callable(command), unit.toMillis(delay)));
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+      return add(new ManualTask<V>(callable, unit.toMillis(delay)));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+      throw new UnsupportedOperationException();
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+      throw new UnsupportedOperationException();
+    }
+
+    public void execute(Runnable command) {
+      schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+      myShutdown = true;
+      myTasks.clear();
+    }
+
+    public synchronized List<Runnable> shutdownNow() {
+      final List<Runnable> tasks = new ArrayList<Runnable>(myTasks);
+      shutdown();
+      return tasks;
+    }
+
+    public synchronized boolean isShutdown() {
+      return myShutdown;
+    }
+
+    public synchronized boolean isTerminated() {
+      return myShutdown;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return isTerminated();
+    }
+  }
+
+  private static class ManualTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+    private final long myDelay;
+
+    private ManualTask(@NotNull final Callable<V> callable, final long delay) {
+      super(callable);
+      myDelay = delay;
+    }
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(myDelay, TimeUnit.MILLISECONDS);
+    }
+
+    public int compareTo(Delayed o) {
+      final long delay = o.getDelay(TimeUnit.MILLISECONDS);
+      return myDelay < delay ? -1 : myDelay == delay ? 0 : 1;
+    }
+  }
 }
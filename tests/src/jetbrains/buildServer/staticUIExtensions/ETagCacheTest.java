@@ -0,0 +1,43 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.staticUIExtensions.web.ETagCache;
+import jetbrains.buildServer.util.FileUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+public class ETagCacheTest extends BaseTestCase {
+  @Test
+  public void testETagFollowsContent() throws Exception {
+    final ETagCache cache = new ETagCache();
+    final File file = createTempFile("content");
+    final File copy = createTempFile("content");
+
+    final String etag = cache.getETag(file);
+    Assert.assertEquals(etag, "\"" + "040f06fd774092478d450774f5ba30c5da78acc8" + "\"");
+    Assert.assertEquals(cache.getETag(file), etag);
+    Assert.assertEquals(cache.getETag(copy), etag);
+
+    FileUtil.writeFile(file, "changed content");
+    Assert.assertTrue(file.setLastModified(file.lastModified() + 2000));
+    Assert.assertFalse(cache.getETag(file).equals(etag));
+  }
+}
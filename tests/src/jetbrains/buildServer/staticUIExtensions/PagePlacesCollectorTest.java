@@ -43,4 +43,14 @@ public class PagePlacesCollectorTest extends BaseTestCase {
     Assert.assertFalse(placeIds.contains(PlaceId.ADMIN_SERVER_CONFIGURATION_TAB));
     Assert.assertFalse(placeIds.contains(PlaceId.MY_TOOLS_TABS));
   }
+
+  @Test
+  public void testFindByName() {
+    final PagePlacesCollector collector = new PagePlacesCollector();
+    Assert.assertEquals(collector.findByName("ALL_PAGES_HEADER"), PlaceId.ALL_PAGES_HEADER);
+    Assert.assertEquals(collector.findByName(" all_pages_footer "), PlaceId.ALL_PAGES_FOOTER);
+    Assert.assertNull(collector.findByName("ADMIN_SERVER_CONFIGURATION_TAB"));
+    Assert.assertNull(collector.findByName("no such place"));
+    Assert.assertNull(collector.findByName(null));
+  }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.MockServerPluginDescriptior;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
+import jetbrains.buildServer.staticUIExtensions.model.TrueMatcher;
+import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragments;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragmentsCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticAssets;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RuleFragmentsCacheTest extends BaseTestCase {
+  private File myBase;
+  private RuleFragmentsCache myFragments;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myBase = createTempDir();
+
+    final Configuration config = new Configuration() {
+      @NotNull
+      public File getConfigurationXml() {
+        return new File(myBase, "static-ui-extensions.xml");
+      }
+
+      @Nullable
+      public File mapIncludeFilePath(@NotNull String path) {
+        return new File(myBase, path);
+      }
+
+      @NotNull
+      public String getAccessToken() {
+        return "token";
+      }
+
+      @NotNull
+      public File getIncludeFilesBase() {
+        return myBase;
+      }
+    };
+    final ControllerPaths paths = new ControllerPaths(new MockServerPluginDescriptior(), config);
+    final StaticContentCache cache = new StaticContentCache();
+    myFragments = new RuleFragmentsCache(config, cache, new StaticAssets(paths, cache));
+  }
+
+  @NotNull
+  private static String fragment(@NotNull final RuleFragments fragments, @NotNull final String ruleId) throws Exception {
+    final RuleFragments.Fragment fragment = fragments.getFragment(ruleId);
+    Assert.assertNotNull(fragment);
+    Assert.assertEquals(new String(fragment.getData(), "utf-8"), fragment.getText());
+    return fragment.getText();
+  }
+
+  @Test
+  public void testRendersRule() throws Exception {
+    FileUtil.writeFile(new File(myBase, "a.html"), "html");
+    FileUtil.writeFile(new File(myBase, "a.css"), "css");
+    final RuleFragments fragments = myFragments.createFragments(Arrays.asList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, "a.css"))));
+
+    Assert.assertEquals(fragment(fragments, "_0"), "\n<style type=\"text/css\">\ncss\n</style>\nhtml");
+    Assert.assertNull(fragments.getFragment("_1"));
+  }
+
+  @Test
+  public void testConfigurationsKeepOwnFragments() throws Exception {
+    FileUtil.writeFile(new File(myBase, "a.html"), "aaa");
+    FileUtil.writeFile(new File(myBase, "b.html"), "bbb");
+    final RuleFragments first = myFragments.createFragments(Arrays.asList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null))));
+    Assert.assertEquals(fragment(first, "_0"), "aaa");
+
+    // rule ids are positional, the same id refers to other content in the next configuration
+    final RuleFragments second = myFragments.createFragments(Arrays.asList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("b.html", null, null))));
+    Assert.assertEquals(fragment(second, "_0"), "bbb");
+    Assert.assertEquals(fragment(first, "_0"), "aaa");
+    myFragments.release(first);
+  }
+
+  @Test
+  public void testBundle() throws Exception {
+    myFragments.settingsChanged(new Settings(Collections.singletonMap(RuleFragmentsCache.BUNDLE_PARAM, "true")));
+    FileUtil.writeFile(new File(myBase, "a.html"), "html");
+    FileUtil.writeFile(new File(myBase, "a.css"), "a {}");
+    FileUtil.writeFile(new File(myBase, "b.css"), "b {}");
+    FileUtil.writeFile(new File(myBase, "b.js"), "b();");
+    final RuleFragments fragments = myFragments.createFragments(Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, "a.css")),
+            new Rule("_1", new TrueMatcher(), PlaceId.ALL_PAGES_FOOTER, new StaticContent(null, "b.js", "b.css"))));
+
+    Assert.assertEquals(fragment(fragments, "_0"), "html");
+    Assert.assertEquals(fragment(fragments, "_1"), "");
+
+    final RuleFragments.Fragment bundle = fragments.getBundle(Arrays.asList("_0", "_1"));
+    Assert.assertEquals(bundle.getText(),
+            "\n<style type=\"text/css\">\na {}\nb {}\n\n</style>\n" +
+            "\n<script type=\"text/javascript\">\nb();\n\n</script>\n");
+    Assert.assertSame(fragments.getBundle(Arrays.asList("_0", "_1")), bundle);
+    Assert.assertEquals(fragments.getBundle(Collections.singletonList("_0")).getText(),
+            "\n<style type=\"text/css\">\na {}\n\n</style>\n");
+  }
+
+  @Test
+  public void testEagerFragmentsAreRenderedOnUpdate() throws Exception {
+    myFragments.settingsChanged(new Settings(Collections.singletonMap(RuleFragmentsCache.EAGER_PARAM, "true")));
+    final File html = new File(myBase, "a.html");
+    FileUtil.writeFile(html, "original");
+    final RuleFragments fragments = myFragments.createFragments(Arrays.asList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null))));
+
+    // files are not watched in this test, the fragment was prepared before the change
+    FileUtil.writeFile(html, "changed");
+    Assert.assertEquals(fragment(fragments, "_0"), "original");
+  }
+}
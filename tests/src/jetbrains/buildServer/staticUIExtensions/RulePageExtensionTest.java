@@ -17,13 +17,23 @@
 package jetbrains.buildServer.staticUIExtensions;
 
 import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.controllers.MockRequest;
 import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
 import jetbrains.buildServer.staticUIExtensions.model.StartsWithMatcher;
 import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
 import jetbrains.buildServer.staticUIExtensions.model.TrueMatcher;
 import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.PlaceRulesExtension;
 import jetbrains.buildServer.staticUIExtensions.web.RulePageExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragmentsCache;
 import jetbrains.buildServer.staticUIExtensions.web.RulePageExtensionsFactory;
+import jetbrains.buildServer.staticUIExtensions.web.StaticAssets;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PagePlace;
 import jetbrains.buildServer.web.openapi.PagePlaces;
 import jetbrains.buildServer.web.openapi.PlaceId;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
@@ -37,8 +47,12 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -50,6 +64,9 @@ public class RulePageExtensionTest extends BaseTestCase {
   private Configuration myConfig;
   private RulePageExtensionsFactory myFactory;
   private PagePlaces myPagePlaces;
+  private RuleFragmentsCache myFragments;
+  private StaticContentManager myManager;
+  private File myBase;
 
   @BeforeMethod
   @Override
@@ -59,6 +76,8 @@ public class RulePageExtensionTest extends BaseTestCase {
     myDescriptor = m.mock(PluginDescriptor.class);
     myConfig = m.mock(Configuration.class);
     myPagePlaces = m.mock(PagePlaces.class);
+    final PagePlace place = m.mock(PagePlace.class);
+    myBase = createTempDir();
 
     m.checking(new Expectations(){{
       allowing(myDescriptor).getPluginResourcesPath(with(any(String.class))); will(new CustomAction("map plugin resources") {
@@ -67,10 +86,21 @@ public class RulePageExtensionTest extends BaseTestCase {
         }
       });
       allowing(myDescriptor).getPluginName(); will(returnValue("pluginName"));
+      allowing(myPagePlaces).getPlaceById(with(any(PlaceId.class))); will(returnValue(place));
+      allowing(place);
       allowing(myConfig).getAccessToken();will(returnValue("token"));
+      allowing(myConfig).mapIncludeFilePath(with(any(String.class))); will(new CustomAction("map include file") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return new File(myBase, (String) invocation.getParameter(0));
+        }
+      });
     }});
 
-    myFactory = new RulePageExtensionsFactory(myPagePlaces, myDescriptor, new ControllerPaths(myDescriptor, myConfig));
+    final ControllerPaths paths = new ControllerPaths(myDescriptor, myConfig);
+    final StaticContentCache cache = new StaticContentCache();
+    myFragments = new RuleFragmentsCache(myConfig, cache, new StaticAssets(paths, cache));
+    myFactory = new RulePageExtensionsFactory(myPagePlaces, myDescriptor, paths);
+    myManager = new StaticContentManager();
 
 
 
@@ -155,6 +185,19 @@ public class RulePageExtensionTest extends BaseTestCase {
     Assert.assertEquals(ext.getIncludeUrl(), "/base/resources.html?token=token&includeJsFile=main.js&includeCssFile=main.css");
   }
 
+  @Test
+  public void testCombinedResource() {
+    Rule r = new Rule(
+            "aaa",
+            new TrueMatcher(),
+            PlaceId.ALL_PAGES_HEADER,
+            new StaticContent("main.html", "main.js", "main.css"));
+
+    final RulePageExtension ext = new RulePageExtension(myPagePlaces, myDescriptor, new ControllerPaths(myDescriptor, myConfig), r, true, false);
+
+    Assert.assertEquals(ext.getIncludeUrl(), "/base/resources.html?token=token&rule=aaa");
+  }
+
   @Test
   public void testRequestMatch() {
     Rule r = new Rule(
@@ -170,6 +213,128 @@ public class RulePageExtensionTest extends BaseTestCase {
     Assert.assertFalse(ext.isAvailable(getMockRequest("project.jsp", "tab=projectOverview&projectId=id2", "")));
   }
 
+  @Test
+  public void testPlaceExtensions() {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(RulePageExtensionsFactory.DISPATCH_PARAM, RulePageExtensionsFactory.DISPATCH_PLACE);
+    myFactory.settingsChanged(new Settings(params));
+    Assert.assertTrue(myFactory.isPlaceDispatch());
+
+    final List<Rule> rules = Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null)),
+            new Rule("_1", new TrueMatcher(), PlaceId.ALL_PAGES_FOOTER, new StaticContent("b.html", null, null)),
+            new Rule("_2", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("c.html", null, null)));
+
+    final List<PlaceRulesExtension> exts = myFactory.createPlaceExtensions(rules, new RulesMatcher(rules));
+    Assert.assertEquals(exts.size(), 2);
+    Assert.assertEquals(exts.get(0).getPlaceId(), PlaceId.ALL_PAGES_HEADER);
+    Assert.assertEquals(exts.get(0).getRules(), Arrays.asList(rules.get(0), rules.get(2)));
+    Assert.assertEquals(exts.get(0).getIncludeUrl(), "/base/resources.html?token=token&place=p0");
+    Assert.assertEquals(exts.get(1).getPlaceId(), PlaceId.ALL_PAGES_FOOTER);
+    Assert.assertEquals(exts.get(1).getIncludeUrl(), "/base/resources.html?token=token&place=p1");
+  }
+
+  @Test
+  public void testDirectInclude() {
+    FileUtil.writeFile(new File(myBase, "main.html"), "<b>main</b>");
+    FileUtil.writeFile(new File(myBase, "main.css"), "body {}");
+    final List<Rule> rules = Arrays.asList(
+            new Rule("aaa", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("main.html", null, "main.css")),
+            new Rule("bbb", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent(null, null, null)));
+    myFactory.settingsChanged(new Settings(Collections.singletonMap(RulePageExtensionsFactory.INCLUDE_PARAM, RulePageExtensionsFactory.INCLUDE_DIRECT)));
+
+    final RulePageExtension ext = create(rules.get(0));
+    myManager.updateExtensions(Collections.singletonList(ext), new RulesMatcher(rules), myFragments.createFragments(rules));
+    Assert.assertEquals(ext.getIncludeUrl(), "/base/fragment.jsp");
+    Assert.assertTrue(ext.isAvailable(getMockRequest("overview.html", null, "")));
+
+    final Map<String, Object> model = new HashMap<String, Object>();
+    ext.fillModel(model, getMockRequest("overview.html", null, ""));
+    Assert.assertEquals(model.get("staticUIExtensionsFragment"), "\n<style type=\"text/css\">\nbody {}\n</style>\n<b>main</b>");
+
+    Assert.assertFalse(create(rules.get(1)).isAvailable(getMockRequest("overview.html", null, "")));
+  }
+
+  @Test
+  public void testDirectIncludeOfPlace() {
+    FileUtil.writeFile(new File(myBase, "a.html"), "aaa");
+    FileUtil.writeFile(new File(myBase, "b.html"), "bbb");
+    final List<Rule> rules = Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null)),
+            new Rule("_1", new StartsWithMatcher("project.html"), PlaceId.ALL_PAGES_HEADER, new StaticContent("c.html", null, null)),
+            new Rule("_2", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("b.html", null, null)));
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(RulePageExtensionsFactory.DISPATCH_PARAM, RulePageExtensionsFactory.DISPATCH_PLACE);
+    params.put(RulePageExtensionsFactory.INCLUDE_PARAM, RulePageExtensionsFactory.INCLUDE_DIRECT);
+    myFactory.settingsChanged(new Settings(params));
+
+    final RulesMatcher matcher = new RulesMatcher(rules);
+    final PlaceRulesExtension ext = myFactory.createPlaceExtensions(rules, matcher).get(0);
+    myManager.updateExtensions(Collections.singletonList(ext), matcher, myFragments.createFragments(rules));
+    Assert.assertEquals(ext.getIncludeUrl(), "/base/fragment.jsp");
+
+    final MockRequest request = new MockRequest();
+    request.setRequestURI("bs", "/overview.html");
+    Assert.assertTrue(ext.isAvailable(request));
+
+    final Map<String, Object> model = new HashMap<String, Object>();
+    ext.fillModel(model, request);
+    Assert.assertEquals(model.get("staticUIExtensionsFragment"), "aaabbb");
+  }
+
+  @Test
+  public void testDirectIncludeRendersFragmentsOfPageSnapshot() {
+    FileUtil.writeFile(new File(myBase, "a.html"), "aaa");
+    FileUtil.writeFile(new File(myBase, "b.html"), "bbb");
+    myFactory.settingsChanged(new Settings(Collections.singletonMap(RulePageExtensionsFactory.INCLUDE_PARAM, RulePageExtensionsFactory.INCLUDE_DIRECT)));
+
+    final List<Rule> oldRules = Collections.singletonList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null)));
+    final RulePageExtension oldExt = create(oldRules.get(0));
+    myManager.updateExtensions(Collections.singletonList(oldExt), new RulesMatcher(oldRules), myFragments.createFragments(oldRules));
+
+    final MockRequest request = new MockRequest();
+    request.setRequestURI("bs", "/overview.html");
+    Assert.assertTrue(oldExt.isAvailable(request));
+
+    // the same rule id refers to other content in the new configuration
+    final List<Rule> newRules = Collections.singletonList(new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("b.html", null, null)));
+    final RulePageExtension newExt = create(newRules.get(0));
+    myManager.updateExtensions(Collections.singletonList(newExt), new RulesMatcher(newRules), myFragments.createFragments(newRules));
+
+    final Map<String, Object> model = new HashMap<String, Object>();
+    oldExt.fillModel(model, request);
+    Assert.assertEquals(model.get("staticUIExtensionsFragment"), "aaa");
+
+    newExt.fillModel(model, getMockRequest("overview.html", null, ""));
+    Assert.assertEquals(model.get("staticUIExtensionsFragment"), "bbb");
+  }
+
+  @Test
+  public void testPathToMatchIsComputedOncePerRequest() {
+    final Map<String, Object> attributes = new HashMap<String, Object>();
+    final Mockery mockery = new Mockery();
+    final HttpServletRequest request = mockery.mock(HttpServletRequest.class);
+    mockery.checking(new Expectations() {{
+      allowing(request).getRequestURI();  will(returnValue("/bs/project.jsp"));
+      allowing(request).getQueryString();  will(returnValue("projectId=id1"));
+      allowing(request).getContextPath();  will(returnValue("/bs"));
+      allowing(request).getAttribute(with(any(String.class))); will(new CustomAction("get attribute") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return attributes.get((String) invocation.getParameter(0));
+        }
+      });
+      oneOf(request).setAttribute(with(any(String.class)), with(any(Object.class))); will(new CustomAction("set attribute") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return attributes.put((String) invocation.getParameter(0), invocation.getParameter(1));
+        }
+      });
+    }});
+
+    final String path = RulePageExtension.getPathToMatch(request);
+    Assert.assertSame(RulePageExtension.getPathToMatch(request), path);
+    mockery.assertIsSatisfied();
+  }
+
   private HttpServletRequest getMockRequest(final String requestURI, final String quesryString, final String contextPath) {
     final Mockery mockery = new Mockery();
     final HttpServletRequest request = mockery.mock(HttpServletRequest.class);
@@ -177,6 +342,8 @@ public class RulePageExtensionTest extends BaseTestCase {
       allowing(request).getRequestURI();  will(returnValue(requestURI));
       allowing(request).getQueryString();  will(returnValue(quesryString));
       allowing(request).getContextPath();  will(returnValue(contextPath));
+      allowing(request).getAttribute(with(any(String.class)));  will(returnValue(null));
+      allowing(request).setAttribute(with(any(String.class)), with(any(Object.class)));
     }}
   );
     return request;
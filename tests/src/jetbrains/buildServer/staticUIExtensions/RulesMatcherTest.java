@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RulesMatcherTest extends BaseTestCase {
+  private static final String[] URLS = {
+          "",
+          "overview.html",
+          "overview.html333",
+          "zzzoverview.html",
+          "project.html?projectId=id111&tab=projectOverview",
+          "project.html?tab=projectOverview&projectId=id111",
+          "viewLog.html?buildId=1&tab=buildResultsDiv",
+          "admin/admin.html?item=projects",
+          "aaab",
+          "abab",
+  };
+
+  @NotNull
+  private static Rule rule(@NotNull final String id, @NotNull final UrlMatcher matcher) {
+    return new Rule(id, matcher, PlaceId.ALL_PAGES_HEADER, new StaticContent("a.html", null, null));
+  }
+
+  @NotNull
+  private static UrlMatcher and(@NotNull final UrlMatcher... matchers) {
+    return new AndMatcher(Arrays.asList(matchers));
+  }
+
+  @NotNull
+  private static UrlMatcher or(@NotNull final UrlMatcher... matchers) {
+    return new OrMatcher(Arrays.asList(matchers));
+  }
+
+  @Test
+  public void testSameAsUrlMatchers() {
+    final List<Rule> rules = new ArrayList<Rule>();
+    rules.add(rule("true", new TrueMatcher()));
+    rules.add(rule("starts", new StartsWithMatcher("overview.html")));
+    rules.add(rule("starts-empty", new StartsWithMatcher("")));
+    rules.add(rule("equals", new EqualsMatcher("overview.html")));
+    rules.add(rule("equals-empty", new EqualsMatcher("")));
+    rules.add(rule("contains", new ContainsMatcher("overview")));
+    rules.add(rule("contains-empty", new ContainsMatcher("")));
+    rules.add(rule("contains-overlap", new ContainsMatcher("aab")));
+    rules.add(rule("contains-suffix", new ContainsMatcher("bab")));
+    rules.add(rule("contains-short", new ContainsMatcher("ab")));
+    rules.add(rule("and", and(new StartsWithMatcher("project.html"), new ContainsMatcher("projectId=id111"), new ContainsMatcher("tab=projectOverview"))));
+    rules.add(rule("or", or(new EqualsMatcher("aaab"), new StartsWithMatcher("viewLog.html"))));
+    rules.add(rule("empty-and", and()));
+    rules.add(rule("empty-or", or()));
+    rules.add(rule("nested", or(and(new StartsWithMatcher("admin/"), new ContainsMatcher("item=")), new EqualsMatcher("abab"))));
+    rules.add(rule("custom", new UrlMatcher() {
+      public boolean matches(@NotNull String url) {
+        return url.length() == 4;
+      }
+    }));
+
+    final RulesMatcher matcher = new RulesMatcher(rules);
+    for (String url : URLS) {
+      final RulesMatcher.Match match = matcher.match(url);
+      for (Rule rule : rules) {
+        Assert.assertEquals(match.matches(rule.getRuleId()), rule.getUrlMatcher().matches(url), rule + " for url '" + url + "'");
+      }
+    }
+  }
+
+  @Test
+  public void testUnknownRule() {
+    final RulesMatcher matcher = new RulesMatcher(Collections.singletonList(rule("_0", new TrueMatcher())));
+    Assert.assertFalse(matcher.match("overview.html").matches("_1"));
+    Assert.assertTrue(matcher.match("overview.html").matches("_0"));
+  }
+
+  @Test
+  public void testMatchedRuleIds() {
+    final RulesMatcher matcher = new RulesMatcher(Arrays.asList(
+            rule("_0", new StartsWithMatcher("overview.html")),
+            rule("_1", new EqualsMatcher("changes.html")),
+            rule("_2", new TrueMatcher())));
+    Assert.assertEquals(matcher.match("overview.html").getRuleIds(), Arrays.asList("_0", "_2"));
+    Assert.assertEquals(matcher.match("changes.html").getRuleIds(), Arrays.asList("_1", "_2"));
+  }
+
+  @Test
+  public void testNoRules() {
+    Assert.assertTrue(new RulesMatcher(Collections.<Rule>emptyList()).match("overview.html").isEmpty());
+  }
+}
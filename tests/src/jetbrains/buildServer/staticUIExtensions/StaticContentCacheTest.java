@@ -0,0 +1,306 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.web.ContentWrapper;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StaticContentCacheTest extends BaseTestCase {
+  private StaticContentCache myCache;
+  private File myBase;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new StaticContentCache();
+    myBase = createTempDir();
+  }
+
+  @NotNull
+  private File file(@NotNull final String name, @NotNull final String content) {
+    final File file = new File(myBase, name);
+    FileUtil.writeFile(file, content);
+    return file;
+  }
+
+  private void setLimits(int entries, long size) {
+    setSettings(StaticContentCache.MAX_ENTRIES_PARAM, String.valueOf(entries),
+                StaticContentCache.MAX_SIZE_PARAM, String.valueOf(size));
+  }
+
+  private void setSettings(@NotNull final String... nameValues) {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      params.put(nameValues[i], nameValues[i + 1]);
+    }
+    myCache.settingsChanged(new Settings(params));
+  }
+
+  @Test
+  public void testWrappedContent() throws Exception {
+    final File css = file("a.css", "body {}");
+    Assert.assertEquals(new String(myCache.getContent(css, ContentWrapper.CSS), "utf-8"), "\n<style type=\"text/css\">\nbody {}\n</style>\n");
+    Assert.assertEquals(new String(myCache.getContent(css, ContentWrapper.HTML), "utf-8"), "body {}");
+    Assert.assertEquals(myCache.getEntriesCount(), 2);
+  }
+
+  @Test
+  public void testTextIsDecodedOnce() throws Exception {
+    final File css = file("a.css", "body {}");
+    final String text = myCache.getText(css, ContentWrapper.CSS);
+    Assert.assertEquals(text, "\n<style type=\"text/css\">\nbody {}\n</style>\n");
+    Assert.assertSame(myCache.getText(css, ContentWrapper.CSS), text);
+    Assert.assertEquals(new String(myCache.getContent(css, ContentWrapper.CSS), "utf-8"), text);
+    Assert.assertEquals(myCache.getEntriesCount(), 1);
+  }
+
+  @Test
+  public void testHitDoesNotCheckFile() throws Exception {
+    final File html = file("a.html", "aaa");
+    final String text = myCache.getText(html, ContentWrapper.HTML);
+
+    // without the watcher the cached content stays valid until it is invalidated
+    Assert.assertTrue(html.delete());
+    Assert.assertSame(myCache.getText(html, ContentWrapper.HTML), text);
+  }
+
+  @Test
+  public void testCurrentContentChecksFileVersion() throws Exception {
+    final File html = file("a.html", "aaa");
+    Assert.assertEquals(new String(myCache.getCurrentContent(html, ContentWrapper.RAW), "utf-8"), "aaa");
+
+    // the watcher has not noticed the change yet
+    FileUtil.writeFile(html, "bbbb");
+    Assert.assertEquals(new String(myCache.getContent(html, ContentWrapper.RAW), "utf-8"), "aaa");
+    Assert.assertEquals(new String(myCache.getCurrentContent(html, ContentWrapper.RAW), "utf-8"), "bbbb");
+    Assert.assertEquals(new String(myCache.getContent(html, ContentWrapper.RAW), "utf-8"), "bbbb");
+
+    final byte[] data = myCache.getCurrentContent(html, ContentWrapper.RAW);
+    Assert.assertSame(myCache.getCurrentContent(html, ContentWrapper.RAW), data);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedByCount() throws Exception {
+    setLimits(2, 1024);
+    final File a = file("a.html", "aaa");
+    final File b = file("b.html", "bbb");
+    final File c = file("c.html", "ccc");
+
+    final String aText = myCache.getText(a, ContentWrapper.HTML);
+    myCache.getText(b, ContentWrapper.HTML);
+    Assert.assertSame(myCache.getText(a, ContentWrapper.HTML), aText);
+
+    myCache.getText(c, ContentWrapper.HTML);
+    Assert.assertEquals(myCache.getEntriesCount(), 2);
+    // each entry keeps 3 chars of text
+    Assert.assertEquals(myCache.getTotalSize(), 12);
+    Assert.assertSame(myCache.getText(a, ContentWrapper.HTML), aText);
+  }
+
+  @Test
+  public void testEvictsBySize() throws Exception {
+    setLimits(100, 20);
+    myCache.getContent(file("a.html", "12345"), ContentWrapper.HTML);
+    myCache.getContent(file("b.html", "12345"), ContentWrapper.HTML);
+    Assert.assertEquals(myCache.getEntriesCount(), 2);
+
+    myCache.getContent(file("c.html", "123"), ContentWrapper.HTML);
+    Assert.assertEquals(myCache.getEntriesCount(), 2);
+    Assert.assertEquals(myCache.getTotalSize(), 16);
+  }
+
+  @Test
+  public void testConcurrentMissesLoadOnce() throws Exception {
+    final File html = file("a.html", "aaa");
+    final BlockingWrapper wrapper = new BlockingWrapper();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> first = executor.submit(getText(html, wrapper));
+      Assert.assertTrue(wrapper.myStarted.await(10, TimeUnit.SECONDS));
+
+      final AtomicReference<String> second = new AtomicReference<String>();
+      final Thread waiter = new Thread(new Runnable() {
+        public void run() {
+          try {
+            second.set(myCache.getText(html, wrapper));
+          } catch (IOException e) {
+            second.set(e.toString());
+          }
+        }
+      });
+      waiter.start();
+      // the second request waits for the load started by the first one
+      final long deadline = System.currentTimeMillis() + 10000;
+      while (waiter.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+        Thread.yield();
+      }
+      Assert.assertEquals(waiter.getState(), Thread.State.WAITING);
+
+      wrapper.myRelease.countDown();
+      Assert.assertEquals(first.get(10, TimeUnit.SECONDS), "aaa");
+      waiter.join(10000);
+      Assert.assertEquals(second.get(), "aaa");
+      Assert.assertEquals(wrapper.myReads.get(), 1);
+      Assert.assertEquals(myCache.getEntriesCount(), 1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLoadFinishedAfterChangeIsNotCached() throws Exception {
+    final File html = file("a.html", "old");
+    final BlockingWrapper wrapper = new BlockingWrapper();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> load = executor.submit(getText(html, wrapper));
+      Assert.assertTrue(wrapper.myStarted.await(10, TimeUnit.SECONDS));
+
+      FileUtil.writeFile(html, "new");
+      myCache.invalidate(html);
+      wrapper.myRelease.countDown();
+
+      Assert.assertEquals(load.get(10, TimeUnit.SECONDS), "old");
+      Assert.assertEquals(myCache.getEntriesCount(), 0);
+      Assert.assertEquals(myCache.getText(html, wrapper), "new");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @NotNull
+  private Callable<String> getText(@NotNull final File file, @NotNull final ContentWrapper wrapper) {
+    return new Callable<String>() {
+      public String call() throws Exception {
+        return myCache.getText(file, wrapper);
+      }
+    };
+  }
+
+  /**
+   * Reads files like {@link ContentWrapper#HTML}, the first read waits until it is released
+   */
+  private static class BlockingWrapper extends ContentWrapper {
+    private final CountDownLatch myStarted = new CountDownLatch(1);
+    private final CountDownLatch myRelease = new CountDownLatch(1);
+    private final AtomicInteger myReads = new AtomicInteger();
+
+    private BlockingWrapper() {
+      super("blocking", "", "");
+    }
+
+    @NotNull
+    @Override
+    public String readText(@NotNull final File file) throws IOException {
+      final String text = super.readText(file);
+      if (myReads.incrementAndGet() == 1) {
+        myStarted.countDown();
+        try {
+          myRelease.await();
+        } catch (InterruptedException e) {
+          throw new IOException("Interrupted");
+        }
+      }
+      return text;
+    }
+  }
+
+  @Test
+  public void testReferencedFilesAreWatchedWithoutEntries() throws Exception {
+    setLimits(1, 1024);
+    final File a = file("a.html", "aaa");
+    final File b = file("b.html", "bbb");
+    myCache.setReferencedFiles(Arrays.asList(a, b));
+
+    myCache.getContent(a, ContentWrapper.HTML);
+    myCache.getContent(b, ContentWrapper.HTML);
+    Assert.assertEquals(myCache.getEntriesCount(), 1);
+    Assert.assertEquals(new HashSet<File>(myCache.getWatchedFiles()), new HashSet<File>(Arrays.asList(a, b)));
+
+    myCache.setReferencedFiles(Collections.<File>emptyList());
+    Assert.assertEquals(new HashSet<File>(myCache.getWatchedFiles()), Collections.singleton(b));
+  }
+
+  @Test
+  public void testDoesNotCacheHugeContent() throws Exception {
+    setLimits(100, 10);
+    final File big = file("big.html", "this is too big to be cached");
+    Assert.assertEquals(new String(myCache.getContent(big, ContentWrapper.HTML), "utf-8"), "this is too big to be cached");
+    Assert.assertEquals(myCache.getEntriesCount(), 0);
+  }
+
+  @Test
+  public void testErrorIsCachedUntilExpired() throws Exception {
+    setSettings(StaticContentCache.ERROR_TTL_PARAM, "100000");
+    final File file = new File(myBase, "missing.html");
+
+    IOException first = null;
+    try {
+      myCache.getContent(file, ContentWrapper.HTML);
+      Assert.fail();
+    } catch (IOException e) {
+      first = e;
+    }
+
+    FileUtil.writeFile(file, "now it exists");
+    try {
+      myCache.getContent(file, ContentWrapper.HTML);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertSame(e, first);
+    }
+  }
+
+  @Test
+  public void testErrorExpires() throws Exception {
+    setSettings(StaticContentCache.ERROR_TTL_PARAM, "0");
+    final File file = new File(myBase, "missing.html");
+    try {
+      myCache.getContent(file, ContentWrapper.HTML);
+      Assert.fail();
+    } catch (IOException e) {
+      //expected
+    }
+
+    FileUtil.writeFile(file, "now it exists");
+    Assert.assertEquals(new String(myCache.getContent(file, ContentWrapper.HTML), "utf-8"), "now it exists");
+  }
+}
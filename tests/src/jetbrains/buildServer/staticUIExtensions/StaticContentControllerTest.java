@@ -20,25 +20,48 @@ import jetbrains.buildServer.controllers.AuthorizationInterceptor;
 import jetbrains.buildServer.controllers.BaseController;
 import jetbrains.buildServer.controllers.BaseControllerTestCase;
 import jetbrains.buildServer.controllers.MockRequest;
+import jetbrains.buildServer.controllers.MockResponse;
 import jetbrains.buildServer.serverSide.MockServerPluginDescriptior;
 import jetbrains.buildServer.serverSide.ServerPaths;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationImpl;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReader;
 import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReaderImpl;
+import jetbrains.buildServer.staticUIExtensions.model.EqualsMatcher;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import jetbrains.buildServer.staticUIExtensions.model.RulesMatcher;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.model.StaticContent;
+import jetbrains.buildServer.staticUIExtensions.model.TrueMatcher;
+import jetbrains.buildServer.staticUIExtensions.web.AssetsController;
 import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.PlaceRulesExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RulePageExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragments;
+import jetbrains.buildServer.staticUIExtensions.web.RuleFragmentsCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticAssets;
 import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
 import jetbrains.buildServer.staticUIExtensions.web.StaticContentController;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
 import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import jetbrains.buildServer.web.openapi.SimplePageExtension;
 import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.jetbrains.annotations.NotNull;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.util.WebUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import javax.servlet.ServletContext;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Test
 public class StaticContentControllerTest extends BaseControllerTestCase {
@@ -50,6 +73,10 @@ public class StaticContentControllerTest extends BaseControllerTestCase {
   private ConfigurationReader myReader;
   private PagePlacesCollector myCollector;
   private ConfigurationImpl myConfig;
+  private RuleFragmentsCache myFragments;
+  private StaticContentManager myManager;
+  private StaticAssets myAssets;
+  private AssetsController myAssetsController;
 
 
   @BeforeMethod
@@ -94,7 +121,20 @@ public class StaticContentControllerTest extends BaseControllerTestCase {
       allowing(auth);
     }});
 
-    return new StaticContentController(auth, web, new ControllerPaths(new MockServerPluginDescriptior(), myConfig), myConfig, new StaticContentCache());
+    final ControllerPaths paths = new ControllerPaths(new MockServerPluginDescriptior(), myConfig);
+    final StaticContentCache cache = new StaticContentCache();
+    myAssets = new StaticAssets(paths, cache);
+    final MockServletContext servletContext = new MockServletContext();
+    servletContext.setContextPath("/bs");
+    myAssets.setServletContext(servletContext);
+    myFragments = new RuleFragmentsCache(myConfig, cache, myAssets);
+    myManager = new StaticContentManager();
+    myAssetsController = new AssetsController(auth, web, paths, myAssets);
+    return new StaticContentController(auth, web, paths, myConfig, cache, myManager, myAssets);
+  }
+
+  private void publishRules(@NotNull final List<Rule> rules) {
+    myManager.updateExtensions(Collections.<SimplePageExtension>emptyList(), null, myFragments.createFragments(rules));
   }
 
   @BeforeMethod
@@ -137,6 +177,20 @@ public class StaticContentControllerTest extends BaseControllerTestCase {
   }
 
 
+  @Test
+  public void testIncludeIsWrittenToPageWriter() throws Exception {
+    myRequest.setRequestURI("bs", "/overview.html");
+    myRequest.setAttribute(WebUtils.INCLUDE_REQUEST_URI_ATTRIBUTE, "/bs/plugins/static-ui-extensions/resources.html");
+    // the including page has already written to the response
+    myResponse.getWriter().write("<page>");
+
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css", "includeFile", "no_file.html");
+    final String content = myResponse.getReturnedContent();
+    assertTrue(content.startsWith("<page>\n<style type=\"text/css\">"));
+    assertContains(content, "background-color: red;");
+    assertContains(content, "ERROR: Content for StaticUIExtensions plugin was not found. Failed to open file: no_file.html");
+  }
+
   @Test
   public void testIncludeWrongFileName() throws Exception {
     myRequest.setRequestURI("bs", "/overview.html");
@@ -145,6 +199,20 @@ public class StaticContentControllerTest extends BaseControllerTestCase {
   }
 
 
+  @Test
+  public void testIncludeFileIsMappedOnce() throws Exception {
+    assertSame(myConfig.mapIncludeFilePath("part.html"), myConfig.mapIncludeFilePath("part.html"));
+    assertNull(myConfig.mapIncludeFilePath("../part.html"));
+    assertNull(myConfig.mapIncludeFilePath("../part.html"));
+  }
+
+  @Test
+  public void testIncludeNotMappedFileName() throws Exception {
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "includeFile", "../part.html");
+    assertContains(myResponse.getReturnedContent(), "ERROR: Content for StaticUIExtensions plugin was not found. Path not found: ../part.html");
+  }
+
   @Test
   public void testIncludeEmptyHtmlAndCss() throws Exception {
     myRequest.setRequestURI("bs", "/overview.html");
@@ -153,5 +221,198 @@ public class StaticContentControllerTest extends BaseControllerTestCase {
     assertContains(myResponse.getReturnedContent(), "<style type=\"text/css\">");
   }
 
+  @Test
+  public void testIncludeRule() throws Exception {
+    publishRules(Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("part.html", "main.js", "header.css"))));
+
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "rule", "_0");
+
+    final String content = myResponse.getReturnedContent();
+    assertContains(content, "background-color: red;");
+    assertContains(content, "alert('hi from main.js');");
+    assertContains(content, "contented included by static ui plugin");
+    assertTrue(content.indexOf("<style type=\"text/css\">") < content.indexOf("<script type=\"text/javascript\">"));
+  }
+
+  @Test
+  public void testIncludePlace() throws Exception {
+    final List<Rule> rules = Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent(null, null, "header.css")),
+            new Rule("_1", new EqualsMatcher("project.html"), PlaceId.ALL_PAGES_HEADER, new StaticContent(null, "main.js", null)),
+            new Rule("_2", new EqualsMatcher("overview.html"), PlaceId.ALL_PAGES_HEADER, new StaticContent("part.html", null, null)));
+    publishRules(rules);
+
+    final PlaceRulesExtension ext = new PlaceRulesExtension(new Mockery().mock(PagePlaces.class), new MockServerPluginDescriptior(),
+            new ControllerPaths(new MockServerPluginDescriptior(), myConfig), PlaceId.ALL_PAGES_HEADER, "p0", rules, new RulesMatcher(rules), false);
+
+    myRequest.setRequestURI("bs", "/overview.html");
+    assertTrue(ext.isAvailable(myRequest));
+    doGet("token", myConfig.getAccessToken(), "place", "p0");
+
+    final String content = myResponse.getReturnedContent();
+    assertContains(content, "background-color: red;");
+    assertContains(content, "contented included by static ui plugin");
+    assertNotContains(content, "alert('hi from main.js');", false);
+  }
+
+  @Test
+  public void testIncludeCssAsLink() throws Exception {
+    myAssets.settingsChanged(new Settings(Collections.singletonMap(StaticAssets.ASSETS_PARAM, StaticAssets.ASSETS_LINK)));
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css");
+
+    final String content = myResponse.getReturnedContent();
+    assertNotContains(content, "background-color: red;", false);
+    assertContains(content, "<link rel=\"stylesheet\" type=\"text/css\" href=\"/bs/plugins/static-ui-extensions/asset.html?name=");
+    final int start = content.indexOf("href=\"") + "href=\"".length();
+    final String href = content.substring(start, content.indexOf('"', start));
+    assertTrue(href.endsWith(".css"));
+
+    MockResponse response = getAsset(href, null);
+    assertEquals(200, response.getStatus());
+    assertContains(response.getReturnedContent(), "background-color: red;");
+    assertEquals("text/css; charset=UTF-8", response.getContentType());
+    assertEquals(AssetsController.CACHE_CONTROL, response.getHeader("Cache-Control"));
+
+    response = getAsset(href, response.getHeader("ETag"));
+    assertEquals(304, response.getStatus());
+    assertEquals("", response.getReturnedContent());
+  }
+
+  @Test
+  public void testLinksAfterAssetsWereSwitchedOff() throws Exception {
+    final Settings link = new Settings(Collections.singletonMap(StaticAssets.ASSETS_PARAM, StaticAssets.ASSETS_LINK));
+    myAssets.settingsChanged(link);
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css");
+    assertEquals(200, getAsset(getHref(myResponse.getReturnedContent()), null).getStatus());
+
+    myAssets.settingsChanged(new Settings(Collections.<String, String>emptyMap()));
+    myResponse = new MockResponse();
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css");
+    assertContains(myResponse.getReturnedContent(), "background-color: red;");
+
+    myAssets.settingsChanged(link);
+    myResponse = new MockResponse();
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css");
+    final String content = myResponse.getReturnedContent();
+    assertContains(content, "<link rel=\"stylesheet\" type=\"text/css\" href=\"/bs/plugins/static-ui-extensions/asset.html?name=");
+    assertEquals(200, getAsset(getHref(content), null).getStatus());
+  }
+
+  @Test
+  public void testAssetsOverCacheLimitsAreInlined() throws Exception {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(StaticAssets.ASSETS_PARAM, StaticAssets.ASSETS_LINK);
+    params.put(StaticContentCache.MAX_ENTRIES_PARAM, "1");
+    myAssets.settingsChanged(new Settings(params));
+
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "includeCssFile", "header.css", "includeJsFile", "main.js");
+
+    final String content = myResponse.getReturnedContent();
+    assertContains(content, "<link rel=\"stylesheet\" type=\"text/css\" href=\"/bs/plugins/static-ui-extensions/asset.html?name=");
+    assertNotContains(content, "<script type=\"text/javascript\" src=", false);
+    assertContains(content, "alert('hi from main.js');");
+    assertEquals(200, getAsset(getHref(content), null).getStatus());
+  }
+
+  @Test
+  public void testIncludeRuleWithLinks() throws Exception {
+    myAssets.settingsChanged(new Settings(Collections.singletonMap(StaticAssets.ASSETS_PARAM, StaticAssets.ASSETS_LINK)));
+    publishRules(Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent("part.html", "main.js", "header.css"))));
+
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "rule", "_0");
+
+    final String content = myResponse.getReturnedContent();
+    assertContains(content, "<link rel=\"stylesheet\" type=\"text/css\" href=\"/bs/plugins/static-ui-extensions/asset.html?name=");
+    assertContains(content, "<script type=\"text/javascript\" src=\"/bs/plugins/static-ui-extensions/asset.html?name=");
+    assertContains(content, "contented included by static ui plugin");
+    assertNotContains(content, "alert('hi from main.js');", false);
+  }
+
+  @Test
+  public void testBundleIsWrittenOncePerPage() throws Exception {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(RuleFragmentsCache.BUNDLE_PARAM, "true");
+    myFragments.settingsChanged(new Settings(params));
+    final List<Rule> rules = Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent(null, "main.js", "header.css")),
+            new Rule("_1", new TrueMatcher(), PlaceId.ALL_PAGES_FOOTER, new StaticContent("part.html", null, "header.css")));
+    publishRules(rules);
+
+    myRequest.setRequestURI("bs", "/overview.html");
+    // page extensions match the page before their content is requested
+    RulePageExtension.getMatch(myRequest, new RulesMatcher(rules));
+
+    doGet("token", myConfig.getAccessToken(), "rule", "_0");
+    String content = myResponse.getReturnedContent();
+    assertEquals(1, content.split("<style type=\"text/css\">", -1).length - 1);
+    assertEquals(2, content.split("background-color: red;", -1).length - 1);
+    assertContains(content, "alert('hi from main.js');");
+
+    myResponse = new MockResponse();
+    doGet("token", myConfig.getAccessToken(), "rule", "_1");
+    content = myResponse.getReturnedContent();
+    assertNotContains(content, "background-color: red;", false);
+    assertContains(content, "contented included by static ui plugin");
+  }
+
+  @Test
+  public void testAssetIsKeptWhileUsed() throws Exception {
+    myAssets.settingsChanged(new Settings(Collections.singletonMap(StaticAssets.ASSETS_PARAM, StaticAssets.ASSETS_LINK)));
+    myFragments.settingsChanged(new Settings(Collections.singletonMap(RuleFragmentsCache.BUNDLE_PARAM, "true")));
+    final List<Rule> rules = Arrays.asList(
+            new Rule("_0", new TrueMatcher(), PlaceId.ALL_PAGES_HEADER, new StaticContent(null, null, "header.css")));
+    final RuleFragments first = myFragments.createFragments(rules);
+    final RuleFragments second = myFragments.createFragments(rules);
+
+    final String href = getHref(first.getBundle(Arrays.asList("_0")).getText());
+    assertEquals(href, getHref(second.getBundle(Arrays.asList("_0")).getText()));
+
+    myFragments.release(first);
+    assertEquals(200, getAsset(href, null).getStatus());
+
+    myFragments.release(second);
+    assertEquals(404, getAsset(href, null).getStatus());
+  }
+
+  @NotNull
+  private static String getHref(@NotNull final String content) {
+    final int start = content.indexOf("href=\"") + "href=\"".length();
+    return content.substring(start, content.indexOf('"', start));
+  }
+
+  @Test
+  public void testUnknownAsset() throws Exception {
+    assertEquals(404, getAsset("/bs/plugins/static-ui-extensions/asset.html?name=0000.css", null).getStatus());
+  }
+
+  @NotNull
+  private MockResponse getAsset(@NotNull final String href, final String etag) throws Exception {
+    final MockRequest request = new MockRequest();
+    request.setMethod("GET");
+    final int query = href.indexOf('?');
+    request.setRequestURI("bs", href.substring("/bs".length(), query));
+    final String[] param = href.substring(query + 1).split("=", 2);
+    request.addParameter(param[0], param[1]);
+    if (etag != null) {
+      request.addHeader("If-None-Match", etag);
+    }
+    final MockResponse response = new MockResponse();
+    myAssetsController.handleRequest(request, response);
+    return response;
+  }
+
+  @Test
+  public void testIncludeUnknownRule() throws Exception {
+    myRequest.setRequestURI("bs", "/overview.html");
+    doGet("token", myConfig.getAccessToken(), "rule", "_42");
+    assertContains(myResponse.getReturnedContent(), "ERROR: Content for StaticUIExtensions plugin was not found. Rule not found: _42");
+  }
 
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.controllers.MockRequest;
+import jetbrains.buildServer.staticUIExtensions.model.*;
+import jetbrains.buildServer.staticUIExtensions.web.ControllerPaths;
+import jetbrains.buildServer.staticUIExtensions.web.RulePageExtension;
+import jetbrains.buildServer.staticUIExtensions.web.RulePageExtensionsFactory;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentManager;
+import jetbrains.buildServer.web.openapi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StaticContentManagerTest extends BaseTestCase {
+  private final List<String> myLog = new ArrayList<String>();
+  private RulePageExtensionsFactory myFactory;
+  private StaticContentManager myManager;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myLog.clear();
+
+    final Mockery m = new Mockery();
+    final PluginDescriptor descriptor = m.mock(PluginDescriptor.class);
+    final Configuration config = m.mock(Configuration.class);
+    final PagePlaces places = m.mock(PagePlaces.class);
+    final PagePlace place = m.mock(PagePlace.class);
+
+    m.checking(new Expectations() {{
+      allowing(descriptor).getPluginResourcesPath(with(any(String.class))); will(returnValue("/base/resources.html"));
+      allowing(descriptor).getPluginName(); will(returnValue("pluginName"));
+      allowing(config).getAccessToken(); will(returnValue("token"));
+      allowing(places).getPlaceById(with(any(PlaceId.class))); will(returnValue(place));
+      allowing(place).addExtension(with(any(PageExtension.class))); will(log("add"));
+      allowing(place).removeExtension(with(any(PageExtension.class))); will(log("remove"));
+    }});
+
+    myFactory = new RulePageExtensionsFactory(places, descriptor, new ControllerPaths(descriptor, config));
+    myManager = new StaticContentManager();
+  }
+
+  @NotNull
+  private CustomAction log(@NotNull final String action) {
+    return new CustomAction(action) {
+      public Object invoke(Invocation invocation) throws Throwable {
+        myLog.add(action + " " + ((PageExtension) invocation.getParameter(0)).getIncludeUrl());
+        return null;
+      }
+    };
+  }
+
+  @NotNull
+  private static Rule rule(@NotNull final String id, @NotNull final String html) {
+    return new Rule(id, new StartsWithMatcher("overview.html"), PlaceId.ALL_PAGES_HEADER, new StaticContent(html, null, null));
+  }
+
+  @NotNull
+  private List<RulePageExtension> update(@NotNull final Rule... rules) {
+    final List<RulePageExtension> exts = new ArrayList<RulePageExtension>();
+    for (Rule rule : rules) {
+      exts.add(myFactory.createExtension(rule));
+    }
+    myManager.updateExtensions(exts, new RulesMatcher(Arrays.asList(rules)), null);
+    return exts;
+  }
+
+  @Test
+  public void testUnchangedExtensionsStayRegistered() {
+    update(rule("_0", "a.html"), rule("_1", "b.html"));
+    Assert.assertEquals(myLog.size(), 2);
+
+    myLog.clear();
+    update(rule("_0", "a.html"), rule("_1", "b.html"));
+    Assert.assertEquals(myLog, new ArrayList<String>());
+  }
+
+  @Test
+  public void testChangedExtensionKeepsOrder() {
+    update(rule("_0", "a.html"), rule("_1", "b.html"), rule("_2", "c.html"));
+
+    myLog.clear();
+    update(rule("_0", "a.html"), rule("_1", "changed.html"), rule("_2", "c.html"));
+    Assert.assertEquals(myLog, Arrays.asList(
+            "add /base/resources.html?token=token&includeFile=changed.html",
+            "add /base/resources.html?token=token&includeFile=c.html",
+            "remove /base/resources.html?token=token&includeFile=b.html",
+            "remove /base/resources.html?token=token&includeFile=c.html"));
+  }
+
+  @Test
+  public void testRemovedExtension() {
+    update(rule("_0", "a.html"), rule("_1", "b.html"));
+
+    myLog.clear();
+    update(rule("_0", "a.html"));
+    Assert.assertEquals(myLog, Arrays.asList("remove /base/resources.html?token=token&includeFile=b.html"));
+
+    myLog.clear();
+    update();
+    Assert.assertEquals(myLog, Arrays.asList("remove /base/resources.html?token=token&includeFile=a.html"));
+  }
+
+  @Test
+  public void testSnapshotIsPinnedToRequest() {
+    final RulePageExtension a = update(rule("_0", "a.html")).get(0);
+    final MockRequest request = new MockRequest();
+    request.setRequestURI("bs", "/overview.html");
+    Assert.assertTrue(a.isAvailable(request));
+
+    final RulePageExtension b = update(rule("_0", "b.html")).get(0);
+    Assert.assertTrue(myManager.getSnapshot().isActive(b));
+    Assert.assertFalse(myManager.getSnapshot().isActive(a));
+
+    // the page started rendering with the old configuration
+    Assert.assertTrue(a.isAvailable(request));
+    Assert.assertFalse(b.isAvailable(request));
+
+    final MockRequest next = new MockRequest();
+    next.setRequestURI("bs", "/overview.html");
+    Assert.assertFalse(a.isAvailable(next));
+    Assert.assertTrue(b.isAvailable(next));
+  }
+
+  @Test
+  public void testAddedExtension() {
+    update(rule("_0", "a.html"));
+
+    myLog.clear();
+    update(rule("_0", "a.html"), rule("_1", "b.html"));
+    Assert.assertEquals(myLog, Arrays.asList("add /base/resources.html?token=token&includeFile=b.html"));
+  }
+}
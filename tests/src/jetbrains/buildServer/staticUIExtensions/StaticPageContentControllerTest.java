@@ -18,6 +18,9 @@ package jetbrains.buildServer.staticUIExtensions;
 
 import com.intellij.openapi.util.text.StringUtil;
 import jetbrains.buildServer.controllers.*;
+import jetbrains.buildServer.staticUIExtensions.model.Settings;
+import jetbrains.buildServer.staticUIExtensions.web.StaticContentCache;
+import jetbrains.buildServer.staticUIExtensions.web.StaticFileSender;
 import jetbrains.buildServer.staticUIExtensions.web.StaticPageContentController;
 import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.web.openapi.WebControllerManager;
@@ -34,6 +37,9 @@ import org.testng.annotations.Test;
 import javax.servlet.ServletContext;
 import java.io.File;
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 @Test
 public class StaticPageContentControllerTest extends BaseControllerTestCase {
@@ -41,6 +47,7 @@ public class StaticPageContentControllerTest extends BaseControllerTestCase {
   private AuthorizationInterceptor auth;
   private WebControllerManager web;
   private ServletContext context;
+  private StaticPageContentController myPagesController;
   private long myRequestDate;
 
 
@@ -92,7 +99,10 @@ public class StaticPageContentControllerTest extends BaseControllerTestCase {
       allowing(auth);
     }});
 
-    return new StaticPageContentController(auth, web, config, getHttpDownloadProcessor());
+    final StaticFileSender sender = new StaticFileSender(new StaticContentCache());
+    sender.setServletContext(context);
+    myPagesController = new StaticPageContentController(auth, web, config, getHttpDownloadProcessor(), sender);
+    return myPagesController;
   }
 
   private HttpDownloadProcessor getHttpDownloadProcessor() {
@@ -218,4 +228,169 @@ public class StaticPageContentControllerTest extends BaseControllerTestCase {
     return context.getMimeType("widget.html");
   }
 
+  private byte[] enableDirectServing(long hotFileSize) throws Exception {
+    return enableDirectServing(hotFileSize, new HashMap<String, String>());
+  }
+
+  private byte[] enableDirectServing(long hotFileSize, @NotNull final Map<String, String> params) throws Exception {
+    params.put(StaticPageContentController.SERVING_PARAM, StaticPageContentController.SERVING_DIRECT);
+    params.put(StaticPageContentController.HOT_FILE_SIZE_PARAM, String.valueOf(hotFileSize));
+    myPagesController.settingsChanged(new Settings(params));
+    return FileUtil.loadFileBytes(new File("./tests/testData/pages/w1/widget.html"));
+  }
+
+  @Test
+  public void testDirectServing() throws Exception {
+    final byte[] data = enableDirectServing(65536);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    doGet();
+    assertEquals(200, myResponse.getStatus());
+    assertEquals("text/html", myResponse.getContentType());
+    assertEquals("bytes", myResponse.getHeader("Accept-Ranges"));
+    assertEquals(String.valueOf(data.length), myResponse.getHeader("Content-Length"));
+    assertTrue(Arrays.equals(data, myResponse.getReturnedBytes()));
+  }
+
+  @Test
+  public void testDirectServingOfLargeFile() throws Exception {
+    final byte[] data = enableDirectServing(0);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    doGet();
+    assertEquals(200, myResponse.getStatus());
+    assertTrue(Arrays.equals(data, myResponse.getReturnedBytes()));
+  }
+
+  @Test
+  public void testDirectServingWithSendfile() throws Exception {
+    final byte[] data = enableDirectServing(0);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    myRequest.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+    myRequest.addHeader("Range", "bytes=10-");
+    doGet();
+    assertEquals(206, myResponse.getStatus());
+    assertEquals(0, myResponse.getReturnedBytes().length);
+    assertEquals(FileUtil.getCanonicalFile(new File("./tests/testData/pages/w1/widget.html")).getAbsolutePath(), myRequest.getAttribute("org.apache.tomcat.sendfile.filename"));
+    assertEquals(10L, myRequest.getAttribute("org.apache.tomcat.sendfile.start"));
+    assertEquals((long) data.length, myRequest.getAttribute("org.apache.tomcat.sendfile.end"));
+  }
+
+  @Test
+  public void testRangeRequest() throws Exception {
+    for (long hotFileSize : new long[]{65536, 0}) {
+      setUp();
+      final byte[] data = enableDirectServing(hotFileSize);
+      myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+      myRequest.addHeader("Range", "bytes=4-9");
+      doGet();
+      assertEquals(206, myResponse.getStatus());
+      assertEquals("bytes 4-9/" + data.length, myResponse.getHeader("Content-Range"));
+      assertEquals("6", myResponse.getHeader("Content-Length"));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, 4, 10), myResponse.getReturnedBytes()));
+    }
+  }
+
+  @Test
+  public void testSuffixRangeRequest() throws Exception {
+    final byte[] data = enableDirectServing(65536);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    myRequest.addHeader("Range", "bytes=-5");
+    doGet();
+    assertEquals(206, myResponse.getStatus());
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, data.length - 5, data.length), myResponse.getReturnedBytes()));
+  }
+
+  @Test
+  public void testUnsatisfiableRangeRequest() throws Exception {
+    final byte[] data = enableDirectServing(65536);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    myRequest.addHeader("Range", "bytes=100000-");
+    doGet();
+    assertEquals(416, myResponse.getStatus());
+    assertEquals("bytes */" + data.length, myResponse.getHeader("Content-Range"));
+  }
+
+  @NotNull
+  private String requestETag() throws Exception {
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    doGet();
+    final String etag = myResponse.getHeader("ETag");
+    assertNotNull(etag);
+    assertTrue(etag.matches("\"[0-9a-f]{40}\""), etag);
+
+    setUp();
+    enableDirectServing(65536);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    return etag;
+  }
+
+  @Test
+  public void testETagMatched() throws Exception {
+    enableDirectServing(65536);
+    final String etag = requestETag();
+    myRequest.addHeader("If-None-Match", "\"other\", " + etag);
+    doGet();
+    assertEquals(304, myResponse.getStatus());
+    assertEquals(etag, myResponse.getHeader("ETag"));
+    assertEquals(0, myResponse.getReturnedBytes().length);
+  }
+
+  @Test
+  public void testETagNotMatched() throws Exception {
+    final byte[] data = enableDirectServing(65536);
+    requestETag();
+    myRequest.addHeader("If-None-Match", "\"other\"");
+    myRequestDate = System.currentTimeMillis();
+    doGet();
+    assertEquals(200, myResponse.getStatus());
+    assertTrue(Arrays.equals(data, myResponse.getReturnedBytes()));
+  }
+
+  @Test
+  public void testDownloadModeChecksModificationDate() throws Exception {
+    final File file = new File("./tests/testData/pages/w1/widget.html");
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    assertEquals(file.lastModified(), myPagesController.getLastModified(myRequest));
+
+    enableDirectServing(65536);
+    assertEquals(-1, myPagesController.getLastModified(myRequest));
+  }
+
+  @Test
+  public void testIfRangeWithETag() throws Exception {
+    final byte[] data = enableDirectServing(65536);
+    final String etag = requestETag();
+    myRequest.addHeader("Range", "bytes=0-1");
+    myRequest.addHeader("If-Range", etag);
+    doGet();
+    assertEquals(206, myResponse.getStatus());
+    assertEquals(2, myResponse.getReturnedBytes().length);
+
+    setUp();
+    enableDirectServing(65536);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    myRequest.addHeader("Range", "bytes=0-1");
+    myRequest.addHeader("If-Range", "\"other\"");
+    doGet();
+    assertEquals(200, myResponse.getStatus());
+    assertEquals(data.length, myResponse.getReturnedBytes().length);
+  }
+
+  @Test
+  public void testCacheControl() throws Exception {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put("pages.cache-control.**/*.js", "max-age=31536000, immutable");
+    params.put("pages.cache-control.**", "no-cache");
+    params.put("pages.cache-control.w1/*.css", "max-age=60");
+    enableDirectServing(65536, params);
+
+    myRequest.setRequestURI("bs", "/app/static_content/w2/js/my.js");
+    doGet();
+    assertEquals("max-age=31536000, immutable", myResponse.getHeader("Cache-Control"));
+
+    setUp();
+    enableDirectServing(65536, params);
+    myRequest.setRequestURI("bs", "/app/static_content/w1/widget.html");
+    doGet();
+    assertEquals("no-cache", myResponse.getHeader("Cache-Control"));
+  }
 }
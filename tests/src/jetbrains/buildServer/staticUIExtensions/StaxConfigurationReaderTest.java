@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.staticUIExtensions;
+
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.config.ConfigurationReaderImpl;
+import jetbrains.buildServer.staticUIExtensions.config.StaxConfigurationReader;
+import jetbrains.buildServer.staticUIExtensions.model.Rule;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Runs all reader tests against the StAX reader and compares it with the JDOM one
+ */
+public class StaxConfigurationReaderTest extends ConfigurationReaderTest {
+  @NotNull
+  @Override
+  protected ConfigurationReader createReader(@NotNull final PagePlacesCollector collector) {
+    return new StaxConfigurationReader(collector);
+  }
+
+  @Test
+  public void test_same_as_jdom_reader() throws Exception {
+    final ConfigurationReader jdom = new ConfigurationReaderImpl(myCollector);
+    for (String name : new String[]{"config_01.xml", "config_02.xml", "config_03.xml", "config_04.xml", "config_05.xml", "config_06.xml", "config_07.xml"}) {
+      final File file = Paths.getConfigsFile(name);
+      Assert.assertEquals(new ArrayList<Rule>(myReader.parseConfiguration(file)), new ArrayList<Rule>(jdom.parseConfiguration(file)), name);
+      Assert.assertEquals(myReader.parseSettings(file), jdom.parseSettings(file), name);
+    }
+  }
+
+  @Test
+  public void test_url_without_conditions() throws Exception {
+    final File file = createTempFile("<root><rule place-id='ALL_PAGES_HEADER' html-file='a.html'><url/></rule></root>");
+    try {
+      myReader.parseConfiguration(file);
+      Assert.fail();
+    } catch (ConfigurationException e) {
+      Assert.assertTrue(e.getMessage().startsWith("No url matching rules found: <url/>"), e.getMessage());
+    }
+  }
+
+  @Test
+  public void test_broken_xml() throws Exception {
+    final File file = createTempFile("<root><rule place-id='ALL_PAGES_HEADER' html-file='a.html'></root>");
+    try {
+      myReader.parseConfiguration(file);
+      Assert.fail();
+    } catch (ConfigurationException e) {
+      Assert.assertTrue(e.getMessage().startsWith("Failed to parse configuration file"), e.getMessage());
+    }
+  }
+}